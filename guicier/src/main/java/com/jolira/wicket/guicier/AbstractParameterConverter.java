@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+import java.util.Locale;
+
+import org.apache.wicket.util.convert.IConverter;
+
+/**
+ * A {@link ParameterConverter} that can be used as the
+ * {@link Parameter#converter()}. Subclasses implement
+ * {@link #parse(CharSequence, int, int)} and
+ * {@link #append(StringBuilder, Object)}; converters of numbers should also
+ * override the primitive variants, which unbox the parsed value by default.
+ * The {@link IConverter} methods, which are only used by code that does not
+ * know about {@link ParameterConverter}s, delegate to these methods and ignore
+ * the locale.
+ * <p>
+ * Malformed values can be rejected by throwing {@link #invalid()}, which does
+ * not allocate anything.
+ *
+ * @author jfk
+ * @since 2.5
+ * @param <T>
+ *            the type of the values
+ */
+public abstract class AbstractParameterConverter<T> implements ParameterConverter<T>, IConverter<T> {
+    /**
+     * The shared exception for malformed values. It has no stack trace, does
+     * not record suppressed exceptions and cannot be given a cause, so
+     * sharing it does not leak anything between requests.
+     */
+    private static final class InvalidValueException extends RuntimeException {
+        private static final long serialVersionUID = -4307410637546012519L;
+
+        InvalidValueException() {
+            super("invalid value", null, false, false);
+        }
+    }
+
+    private static final long serialVersionUID = 3608216823427264316L;
+    private static final RuntimeException INVALID = new InvalidValueException();
+
+    /**
+     * Returns the exception thrown for malformed values. The same immutable
+     * instance, which carries no stack trace, is returned every time.
+     *
+     * @return the exception
+     */
+    protected static RuntimeException invalid() {
+        return INVALID;
+    }
+
+    private Number parseNumber(final CharSequence value, final int start, final int end) {
+        final Object parsed = parse(value, start, end);
+
+        if (!(parsed instanceof Number)) {
+            throw invalid();
+        }
+
+        return (Number) parsed;
+    }
+
+    @Override
+    public boolean parseBoolean(final CharSequence value, final int start, final int end) {
+        final Object parsed = parse(value, start, end);
+
+        if (!(parsed instanceof Boolean)) {
+            throw invalid();
+        }
+
+        return ((Boolean) parsed).booleanValue();
+    }
+
+    @Override
+    public double parseDouble(final CharSequence value, final int start, final int end) {
+        return parseNumber(value, start, end).doubleValue();
+    }
+
+    @Override
+    public float parseFloat(final CharSequence value, final int start, final int end) {
+        return parseNumber(value, start, end).floatValue();
+    }
+
+    @Override
+    public int parseInt(final CharSequence value, final int start, final int end) {
+        return parseNumber(value, start, end).intValue();
+    }
+
+    @Override
+    public long parseLong(final CharSequence value, final int start, final int end) {
+        return parseNumber(value, start, end).longValue();
+    }
+
+    @Override
+    public T convertToObject(final String value, final Locale locale) {
+        return parse(value, 0, value.length());
+    }
+
+    @Override
+    public String convertToString(final T value, final Locale locale) {
+        final StringBuilder buf = new StringBuilder();
+
+        append(buf, value);
+
+        return buf.toString();
+    }
+}
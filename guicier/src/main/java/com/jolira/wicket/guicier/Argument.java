@@ -0,0 +1,30 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an argument of a component constructor that is passed by the caller
+ * of {@link ComponentMaker#create(Object...)} rather than provided by Guice,
+ * such as the id of the component or its model. The caller passes the marked
+ * arguments in the order in which they are declared.
+ *
+ * @author jfk
+ * @since 2.5
+ * @see GuicierComponentFactory
+ */
+@Target(PARAMETER)
+@Retention(RUNTIME)
+@Documented
+public @interface Argument {
+    // nothing
+}
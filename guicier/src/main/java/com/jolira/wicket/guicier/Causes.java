@@ -0,0 +1,41 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+/**
+ * Looks for exceptions wrapped by Wicket or by reflection.
+ *
+ * @author jfk
+ * @since 2.5
+ */
+final class Causes {
+    /**
+     * Finds an exception of the given type in the causes of an exception.
+     *
+     * @param e
+     *            the exception
+     * @param type
+     *            the type to look for
+     * @return the exception or {@code null} if there is none
+     */
+    static <T extends Throwable> T find(final Throwable e, final Class<T> type) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return type.cast(cause);
+            }
+
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+
+        return null;
+    }
+
+    private Causes() {
+        // utility class
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.wicket.WicketRuntimeException;
+
+/**
+ * Describes a {@link Collection} typed {@link Parameter}, such as
+ * {@code List<Long>}, {@code Set<String>} or {@code EnumSet<State>}, and
+ * creates the collections the values are decoded into. Lists are
+ * {@link ArrayList}s, sets are {@link LinkedHashSet}s, so they keep the order
+ * of the values, and sorted sets are {@link TreeSet}s. Sets of enum constants
+ * are {@link EnumSet}s, which are backed by a bit set.
+ *
+ * @author jfk
+ * @since 2.5
+ */
+final class CollectionType {
+    private static final int LIST = 0;
+    private static final int SET = 1;
+    private static final int SORTED_SET = 2;
+    private static final int ENUM_SET = 3;
+
+    /**
+     * Analyzes the type of a parameter.
+     *
+     * @param type
+     *            the raw type
+     * @param genericType
+     *            the generic type (may be {@code null} or the raw type, in
+     *            which case the elements are strings)
+     * @return the collection type or {@code null} if the parameter is not a
+     *         collection
+     */
+    static CollectionType get(final Class<?> type, final Type genericType) {
+        if (!Collection.class.isAssignableFrom(type)) {
+            return null;
+        }
+
+        final Class<?> elementType = getElementType(genericType);
+        final boolean isEnum = elementType.isEnum();
+
+        if (EnumSet.class.equals(type) || isEnum && Set.class.isAssignableFrom(type)
+                && type.isAssignableFrom(EnumSet.class)) {
+            if (!isEnum) {
+                throw new WicketRuntimeException("EnumSet parameters need an enum element type: " + genericType);
+            }
+
+            return new CollectionType(type, elementType, ENUM_SET);
+        }
+
+        if (type.isAssignableFrom(ArrayList.class)) {
+            return new CollectionType(type, elementType, LIST);
+        }
+
+        if (type.isAssignableFrom(LinkedHashSet.class)) {
+            return new CollectionType(type, elementType, SET);
+        }
+
+        if (type.isAssignableFrom(TreeSet.class)) {
+            return new CollectionType(type, elementType, SORTED_SET);
+        }
+
+        throw new WicketRuntimeException("unsupported collection parameter " + genericType + "; use "
+                + List.class.getName() + ", " + Set.class.getName() + ", " + SortedSet.class.getName() + " or "
+                + EnumSet.class.getName());
+    }
+
+    private static Class<?> getElementType(final Type genericType) {
+        if (!(genericType instanceof ParameterizedType)) {
+            return String.class;
+        }
+
+        final Type[] args = ((ParameterizedType) genericType).getActualTypeArguments();
+
+        if (args.length != 1) {
+            throw new WicketRuntimeException("cannot determine the element type of " + genericType);
+        }
+
+        final Type arg = args[0];
+
+        if (arg instanceof Class) {
+            return (Class<?>) arg;
+        }
+
+        if (arg instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) arg).getRawType();
+        }
+
+        throw new WicketRuntimeException("cannot determine the element type of " + genericType);
+    }
+
+    private final Class<?> type;
+    private final Class<?> elementType;
+    private final int kind;
+
+    private CollectionType(final Class<?> type, final Class<?> elementType, final int kind) {
+        this.type = type;
+        this.elementType = elementType;
+        this.kind = kind;
+    }
+
+    /**
+     * @return the type of the elements
+     */
+    Class<?> getElementType() {
+        return elementType;
+    }
+
+    /**
+     * Creates an empty collection.
+     *
+     * @param size
+     *            the number of values
+     * @return the collection
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    Collection<Object> newCollection(final int size) {
+        switch (kind) {
+        case ENUM_SET:
+            return (Collection) EnumSet.noneOf((Class<Enum>) elementType);
+        case SET:
+            return new LinkedHashSet<Object>(Math.max(size * 4 / 3 + 1, 16));
+        case SORTED_SET:
+            return new TreeSet<Object>();
+        default:
+            return new ArrayList<Object>(size);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return type.getName() + "<" + elementType.getName() + ">";
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Constructor;
+
+import javax.inject.Inject;
+
+import org.apache.wicket.Component;
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+
+import com.google.inject.Injector;
+
+/**
+ * The compiled plan for the {@code @Inject} annotated constructor of a
+ * component class. The providers, converters and the constructor handle are
+ * resolved once, so creating a component does not use reflection. Missing
+ * required parameters are rejected like invalid values.
+ * <p>
+ * The members of the component are injected while its {@link Component}
+ * constructor runs, just like the instantiation listener of
+ * {@link GuicierWebApplication} would, but using the cached
+ * {@link MembersInjection} of the class.
+ *
+ * @author jfk
+ * @since 2.5
+ * @param <C>
+ *            the component type
+ */
+final class ComponentConstructor<C extends Component> implements ComponentMaker<C> {
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    /**
+     * The plan of the component currently being constructed by this thread,
+     * until its members have been injected.
+     */
+    private static final ThreadLocal<ComponentConstructor<?>> MAKING = new ThreadLocal<ComponentConstructor<?>>();
+
+    @SuppressWarnings("unchecked")
+    private static <C extends Component> Constructor<C> getConstructor(final Class<C> type) {
+        for (final Constructor<?> constructor : type.getDeclaredConstructors()) {
+            if (constructor.isAnnotationPresent(Inject.class)
+                    || constructor.isAnnotationPresent(com.google.inject.Inject.class)) {
+                return (Constructor<C>) constructor;
+            }
+        }
+
+        throw new WicketRuntimeException("no @Inject annotated constructor found for " + type);
+    }
+
+    /**
+     * Injects the members of a component if it is being created by a
+     * {@link ComponentConstructor} on this thread. Called by the instantiation
+     * listener of {@link GuicierWebApplication}.
+     *
+     * @param component
+     *            the component being constructed
+     * @return {@code true} if the members were injected
+     */
+    static boolean injectMembers(final Component component) {
+        final ComponentConstructor<?> making = MAKING.get();
+
+        if (making == null || making.type != component.getClass()) {
+            return false;
+        }
+
+        MAKING.remove();
+        making.membersInjection.injectMembers(component);
+
+        return true;
+    }
+
+    private final Class<C> type;
+    private final MethodHandle instantiator;
+    private final ConstructorArguments constructorArguments;
+    private final MembersInjection membersInjection;
+
+    ComponentConstructor(final Injector injector, final Guicier guicier, final Class<C> type) {
+        final Constructor<C> constructor = getConstructor(type);
+
+        this.type = type;
+        constructorArguments = new ConstructorArguments(injector, guicier, constructor);
+        instantiator = PageConstructor.getInstantiator(constructor, Component.class);
+        membersInjection = new MembersInjection(injector, type);
+    }
+
+    @Override
+    public C create(final Object... arguments) {
+        return create(null, arguments);
+    }
+
+    @Override
+    public C create(final PageParameters parameters, final Object... arguments) {
+        final Object[] _arguments = arguments != null ? arguments : NO_ARGUMENTS;
+        final int argumentCount = constructorArguments.getArgumentCount();
+
+        if (_arguments.length != argumentCount) {
+            throw new IllegalArgumentException(type.getName() + " takes " + argumentCount
+                    + " arguments, but was passed " + _arguments.length);
+        }
+
+        return newInstance(constructorArguments.get(parameters, _arguments));
+    }
+
+    private C newInstance(final Object[] args) {
+        final ComponentConstructor<?> previous = MAKING.get();
+        final Component component;
+        final boolean injected;
+
+        MAKING.set(this);
+
+        try {
+            component = (Component) instantiator.invokeExact(args);
+        } catch (final Throwable e) {
+            throw GeneratedPageMaker.wrap(e);
+        } finally {
+            injected = MAKING.get() != this;
+
+            if (previous != null) {
+                MAKING.set(previous);
+            } else {
+                MAKING.remove();
+            }
+        }
+
+        // nobody injected the members while the component was constructed
+        if (!injected) {
+            membersInjection.injectMembers(component);
+        }
+
+        return type.cast(component);
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+import org.apache.wicket.Component;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+
+/**
+ * An interface for creating components, the counterpart of {@link PageMaker}.
+ *
+ * @author jfk
+ * @since 2.5
+ * @param <C>
+ *            the component type
+ * @see GuicierComponentFactory
+ */
+public interface ComponentMaker<C extends Component> {
+    /**
+     * Creates a new component.
+     *
+     * @param arguments
+     *            the {@link Argument} annotated constructor arguments, in the
+     *            order they are declared
+     * @return the new component
+     */
+    C create(Object... arguments);
+
+    /**
+     * Creates a new component, passing parameters to the {@link Parameter}
+     * annotated constructor arguments.
+     *
+     * @param parameters
+     *            the parameters (may be {@code null})
+     * @param arguments
+     *            the {@link Argument} annotated constructor arguments, in the
+     *            order they are declared
+     * @return the new component
+     */
+    C create(PageParameters parameters, Object... arguments);
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+import static java.lang.annotation.ElementType.CONSTRUCTOR;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Requests that the Guice provided arguments of a page constructor are
+ * resolved concurrently rather than one after another. Use it for pages that
+ * take several slow, independent services, so constructing the page takes as
+ * long as the slowest service rather than the sum of all of them.
+ * <p>
+ * When used on a page class or a constructor, all Guice provided arguments are
+ * resolved concurrently. When used on a constructor argument, only the
+ * annotated arguments are. Arguments annotated using {@link Parameter} are
+ * never affected.
+ * <p>
+ * The Wicket application, session and request cycle of the calling thread are
+ * available while resolving the arguments, so {@link RequestScoped} and
+ * {@link SessionScoped} objects work as usual. Arguments that are, or depend
+ * on, objects in the request or session scopes of guice-servlet are resolved
+ * on the calling thread, as these scopes cannot be shared with other threads.
+ * <p>
+ * The arguments are resolved using a bounded pool, which runs the work on the
+ * calling thread when all pool threads are busy. Applications can provide
+ * their own {@link java.util.concurrent.Executor} by binding it using
+ * {@code @Named(Concurrent.EXECUTOR)}.
+ *
+ * @author jfk
+ * @since 2.5
+ */
+@Target({ TYPE, CONSTRUCTOR, PARAMETER })
+@Retention(RUNTIME)
+@Documented
+public @interface Concurrent {
+    /**
+     * The name of the optional {@link java.util.concurrent.Executor} binding
+     * used to resolve the arguments.
+     */
+    String EXECUTOR = "guicier.concurrent.executor";
+}
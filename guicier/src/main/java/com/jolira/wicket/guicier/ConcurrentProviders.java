@@ -0,0 +1,266 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+import java.lang.annotation.Annotation;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.wicket.ThreadContext;
+import org.apache.wicket.WicketRuntimeException;
+
+import com.google.inject.Binding;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.google.inject.Scope;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.google.inject.servlet.ServletScopes;
+import com.google.inject.spi.BindingScopingVisitor;
+import com.google.inject.spi.Dependency;
+import com.google.inject.spi.HasDependencies;
+import com.google.inject.spi.LinkedKeyBinding;
+import com.google.inject.spi.ProviderKeyBinding;
+
+/**
+ * Resolves providers of page constructor arguments concurrently.
+ *
+ * @author jfk
+ * @since 2.5
+ * @see Concurrent
+ */
+@Singleton
+final class ConcurrentProviders {
+    private static final class DefaultExecutor {
+        static final Executor INSTANCE = create();
+
+        private static Executor create() {
+            final AtomicInteger count = new AtomicInteger();
+            final int threads = 4 * Runtime.getRuntime().availableProcessors();
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable r) {
+                            final Thread thread = new Thread(r, "guicier-concurrent-" + count.incrementAndGet());
+
+                            thread.setDaemon(true);
+
+                            return thread;
+                        }
+                    }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+            executor.allowCoreThreadTimeOut(true);
+
+            return executor;
+        }
+    }
+
+    private static final class Resolution implements Callable<Object> {
+        private final Provider<?> provider;
+        private final ThreadContext context;
+
+        Resolution(final Provider<?> provider, final ThreadContext context) {
+            this.provider = provider;
+            this.context = context;
+        }
+
+        @Override
+        public Object call() {
+            final ThreadContext previous = ThreadContext.get(false);
+
+            ThreadContext.restore(context);
+
+            try {
+                return provider.get();
+            } finally {
+                ThreadContext.restore(previous);
+            }
+        }
+    }
+
+    private static final BindingScopingVisitor<Boolean> SERVLET_SCOPED = new BindingScopingVisitor<Boolean>() {
+        @Override
+        public Boolean visitEagerSingleton() {
+            return Boolean.FALSE;
+        }
+
+        @Override
+        public Boolean visitNoScoping() {
+            return Boolean.FALSE;
+        }
+
+        @Override
+        public Boolean visitScope(final Scope scope) {
+            return Boolean.valueOf(scope == ServletScopes.REQUEST || scope == ServletScopes.SESSION);
+        }
+
+        @Override
+        public Boolean visitScopeAnnotation(final Class<? extends Annotation> scopeAnnotation) {
+            return Boolean.valueOf(scopeAnnotation == com.google.inject.servlet.RequestScoped.class
+                    || scopeAnnotation == com.google.inject.servlet.SessionScoped.class);
+        }
+    };
+
+    /**
+     * Checks if resolving a key requires the request or session scope of
+     * guice-servlet, which is bound to the calling thread.
+     *
+     * @param injector
+     *            the injector
+     * @param key
+     *            the key
+     * @return {@code true} if the key must be resolved on the calling thread
+     */
+    static boolean isServletScoped(final Injector injector, final Key<?> key) {
+        return isServletScoped(injector, key, new HashSet<Key<?>>());
+    }
+
+    private static boolean isServletScoped(final Injector injector, final Key<?> key, final Set<Key<?>> visited) {
+        if (!visited.add(key) || key.getTypeLiteral().getRawType() == Provider.class
+                || key.getTypeLiteral().getRawType() == javax.inject.Provider.class) {
+            return false; // providers are resolved later
+        }
+
+        final Binding<?> binding = injector.getBinding(key);
+
+        if (binding.acceptScopingVisitor(SERVLET_SCOPED).booleanValue()) {
+            return true;
+        }
+
+        if (binding instanceof LinkedKeyBinding) {
+            return isServletScoped(injector, ((LinkedKeyBinding<?>) binding).getLinkedKey(), visited);
+        }
+
+        if (binding instanceof ProviderKeyBinding) {
+            return isServletScoped(injector, ((ProviderKeyBinding<?>) binding).getProviderKey(), visited);
+        }
+
+        if (!(binding instanceof HasDependencies)) {
+            return false;
+        }
+
+        for (final Dependency<?> dependency : ((HasDependencies) binding).getDependencies()) {
+            if (isServletScoped(injector, dependency.getKey(), visited)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static RuntimeException rethrow(final Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+
+        throw new WicketRuntimeException(cause);
+    }
+
+    private Executor executor;
+
+    /**
+     * Replaces the default pool.
+     *
+     * @param executor
+     *            the executor to be used
+     */
+    @Inject(optional = true)
+    void setExecutor(@Named(Concurrent.EXECUTOR) final Executor executor) {
+        this.executor = executor;
+    }
+
+    private Executor getExecutor() {
+        return executor != null ? executor : DefaultExecutor.INSTANCE;
+    }
+
+    /**
+     * Waits for the resolutions started using {@link #submit} and stores the
+     * results. If one of them fails, the remaining ones are cancelled and the
+     * exception thrown by the provider is rethrown.
+     *
+     * @param pending
+     *            the value returned by {@link #submit}
+     * @param indexes
+     *            the indexes passed to {@link #submit}
+     * @param args
+     *            the array the results are stored in, using the indexes
+     */
+    void join(final Future<?>[] pending, final int[] indexes, final Object[] args) {
+        try {
+            for (int idx = 0; idx < pending.length; idx++) {
+                args[indexes[idx]] = pending[idx].get();
+            }
+        } catch (final InterruptedException e) {
+            cancel(pending);
+            Thread.currentThread().interrupt();
+
+            throw new WicketRuntimeException(e);
+        } catch (final ExecutionException e) {
+            cancel(pending);
+
+            throw rethrow(e.getCause());
+        }
+    }
+
+    /**
+     * Cancels resolutions that have not started yet.
+     *
+     * @param pending
+     *            the value returned by {@link #submit}
+     */
+    void cancel(final Future<?>[] pending) {
+        for (final Future<?> future : pending) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Starts resolving some of the providers. The Wicket thread context of the
+     * calling thread is made available to the threads resolving them.
+     *
+     * @param providers
+     *            the providers of all the arguments
+     * @param indexes
+     *            the indexes of the providers to be resolved
+     * @return the pending results, to be passed to {@link #join}
+     */
+    Future<?>[] submit(final Provider<?>[] providers, final int[] indexes) {
+        final ThreadContext context = ThreadContext.get(false);
+        final Executor _executor = getExecutor();
+        final Future<?>[] pending = new Future<?>[indexes.length];
+
+        for (int idx = 0; idx < indexes.length; idx++) {
+            final FutureTask<Object> task = new FutureTask<Object>(new Resolution(providers[indexes[idx]], context));
+
+            pending[idx] = task;
+
+            try {
+                _executor.execute(task);
+            } catch (final RejectedExecutionException e) {
+                task.run();
+            }
+        }
+
+        return pending;
+    }
+}
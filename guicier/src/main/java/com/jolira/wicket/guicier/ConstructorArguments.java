@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+
+import com.google.inject.Injector;
+import com.google.inject.Provider;
+
+/**
+ * The arguments of the constructor of a component or resource. Arguments
+ * annotated using {@link Argument} are passed by the caller, arguments
+ * annotated using {@link Parameter} are decoded from the parameters of the
+ * request, {@link PageParameters} arguments receive the parameters of the
+ * request, and all other arguments are provided by Guice.
+ * <p>
+ * Missing required parameters are reported as {@link InvalidParametersException}
+ * before any provider is called, just like rejected values.
+ *
+ * @author jfk
+ * @since 2.5
+ */
+final class ConstructorArguments {
+    private static boolean isArgument(final Annotation[] annos) {
+        for (final Annotation anno : annos) {
+            if (anno instanceof Argument) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private final Class<?> type;
+    private final Guicier guicier;
+    private final Provider<?>[] providers;
+    private final ParameterBinding[] bindings;
+    private final int[] argumentIndexes;
+    private final int argumentCount;
+    private final boolean requestIndependent;
+
+    ConstructorArguments(final Injector injector, final Guicier guicier, final Constructor<?> constructor) {
+        final Annotation[][] paramAnnotations = constructor.getParameterAnnotations();
+        final Type[] genericParamTypes = constructor.getGenericParameterTypes();
+        final Class<?>[] paramTypes = constructor.getParameterTypes();
+        final int length = paramTypes.length;
+        int _argumentCount = 0;
+        boolean _requestIndependent = true;
+
+        this.type = constructor.getDeclaringClass();
+        this.guicier = guicier;
+        providers = new Provider<?>[length];
+        bindings = new ParameterBinding[length];
+        argumentIndexes = new int[length];
+
+        Arrays.fill(argumentIndexes, -1);
+
+        for (int idx = 0; idx < length; idx++) {
+            final Annotation[] annos = paramAnnotations[idx];
+            final Parameter param = PageConstructor.getParameterAnnotation(annos);
+
+            if (isArgument(annos)) {
+                argumentIndexes[idx] = _argumentCount++;
+            } else if (param != null) {
+                bindings[idx] = new ParameterBinding(guicier, param, paramTypes[idx], genericParamTypes[idx]);
+                _requestIndependent = false;
+            } else if (PageParameters.class.isAssignableFrom(paramTypes[idx])) {
+                _requestIndependent = false;
+            } else {
+                providers[idx] = injector.getProvider(PageConstructor.getKey(genericParamTypes[idx], annos));
+            }
+        }
+
+        argumentCount = _argumentCount;
+        requestIndependent = _requestIndependent;
+    }
+
+    /**
+     * Returns the arguments for the constructor.
+     *
+     * @param parameters
+     *            the parameters of the request (may be {@code null})
+     * @param arguments
+     *            the {@link Argument} annotated arguments, in the order of the
+     *            constructor
+     * @return the arguments
+     * @throws InvalidParametersException
+     *             if a required parameter is missing or a value was rejected
+     */
+    Object[] get(final PageParameters parameters, final Object[] arguments) {
+        final int length = providers.length;
+        final Object[] args = new Object[length];
+        final ParameterErrors errors = ParameterErrors.open();
+
+        try {
+            for (final ParameterBinding binding : bindings) {
+                if (binding != null && !binding.isOptional() && !binding.isPresent(parameters)) {
+                    errors.add(binding.getName(), null, "missing");
+                }
+            }
+
+            // nothing is provided for a request that is going to be rejected
+            guicier.checkErrors(type, errors);
+
+            for (int idx = 0; idx < length; idx++) {
+                final Provider<?> provider = providers[idx];
+
+                if (provider != null) {
+                    args[idx] = provider.get();
+                    continue;
+                }
+
+                final int argumentIdx = argumentIndexes[idx];
+
+                if (argumentIdx >= 0) {
+                    args[idx] = arguments[argumentIdx];
+                    continue;
+                }
+
+                final ParameterBinding binding = bindings[idx];
+
+                if (binding == null) {
+                    args[idx] = parameters;
+                    continue;
+                }
+
+                args[idx] = binding.get(parameters, null);
+            }
+
+            guicier.checkErrors(type, errors);
+        } finally {
+            errors.close();
+        }
+
+        return args;
+    }
+
+    /**
+     * @return the number of {@link Argument} annotated arguments
+     */
+    int getArgumentCount() {
+        return argumentCount;
+    }
+
+    /**
+     * @return {@code true} if the constructor takes neither {@link Parameter}
+     *         annotated arguments nor {@link PageParameters}
+     */
+    boolean isRequestIndependent() {
+        return requestIndependent;
+    }
+}
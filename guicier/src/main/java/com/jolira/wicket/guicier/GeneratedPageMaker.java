@@ -0,0 +1,322 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Type;
+
+import org.apache.wicket.Page;
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.request.component.IRequestablePage;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+
+/**
+ * The base class of the {@link PageMaker}s generated by the
+ * {@link PageMakerProcessor}. The generated makers call the page constructors
+ * directly. The {@link Provider}s and {@link ParameterBinding}s they use are
+ * looked up once, when the maker is created. The makers of tenants share the
+ * bindings with the maker of the application and only look up their own
+ * providers.
+ * 
+ * @author jfk
+ * @since 2.5
+ */
+public abstract class GeneratedPageMaker implements PageMaker {
+    /**
+     * The suffix appended to the binary name of a page class to form the name
+     * of its generated maker.
+     */
+    public static final String SUFFIX = "_PageMaker";
+
+    /**
+     * Returns the generated maker for a page class.
+     * 
+     * @param injector
+     *            the injector used to create the maker
+     * @param pageClass
+     *            the page class
+     * @return the maker or {@code null} if none was generated
+     */
+    static GeneratedPageMaker find(final Injector injector, final Class<? extends IRequestablePage> pageClass) {
+        final String name = pageClass.getName() + SUFFIX;
+        final Class<?> makerClass;
+
+        try {
+            makerClass = Class.forName(name, true, pageClass.getClassLoader());
+        } catch (final ClassNotFoundException e) {
+            return null;
+        }
+
+        if (!GeneratedPageMaker.class.isAssignableFrom(makerClass)) {
+            return null;
+        }
+
+        return newInstance(makerClass.asSubclass(GeneratedPageMaker.class), injector);
+    }
+
+    /**
+     * Calls the constructor directly rather than asking the injector, which
+     * would create a child injector's maker using its parent.
+     */
+    private static GeneratedPageMaker newInstance(final Class<? extends GeneratedPageMaker> makerClass,
+            final Injector injector) {
+        try {
+            return makerClass.getConstructor(Injector.class).newInstance(injector);
+        } catch (final InvocationTargetException e) {
+            final Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            throw new WicketRuntimeException(cause);
+        } catch (final Exception e) {
+            throw new WicketRuntimeException(e);
+        }
+    }
+
+    /**
+     * Wraps an exception thrown by a page, component or resource constructor
+     * the same way {@link Constructor#newInstance(Object...)} would.
+     * 
+     * @param e
+     *            the exception
+     * @return the wrapped exception
+     */
+    protected static WicketRuntimeException wrap(final Throwable e) {
+        return new WicketRuntimeException(new InvocationTargetException(e));
+    }
+
+    /**
+     * Checks if a parameter was passed without allocating any objects.
+     * 
+     * @param parameters
+     *            the parameters passed to the page (may be {@code null})
+     * @param key
+     *            the key of the parameter
+     * @return {@code true} if there is at least one value for the key
+     */
+    protected static boolean isPresent(final PageParameters parameters, final String key) {
+        return parameters != null && parameters.getPosition(key) >= 0;
+    }
+
+    private final Injector injector;
+    private final Guicier guicier;
+    private final Class<? extends Page> pageClass;
+    private final MembersInjection membersInjection;
+    private final PageRejectedException rejection;
+    private final ParameterFields parameterFields;
+
+    /**
+     * Create a new maker.
+     * 
+     * @param injector
+     *            the injector to be used
+     * @param pageClass
+     *            the class of the pages created
+     */
+    protected GeneratedPageMaker(final Injector injector, final Class<? extends Page> pageClass) {
+        this.injector = injector;
+        this.pageClass = pageClass;
+        this.guicier = injector.getInstance(Guicier.class);
+        this.membersInjection = new MembersInjection(injector, pageClass);
+        this.rejection = new PageRejectedException(pageClass);
+        this.parameterFields = ParameterFields.get(guicier, pageClass, rejection);
+    }
+
+    /**
+     * Create a maker that uses the providers of another injector and shares
+     * everything else with an existing maker.
+     * 
+     * @param injector
+     *            the injector to be used, typically the child injector of a
+     *            tenant
+     * @param shared
+     *            the existing maker
+     */
+    protected GeneratedPageMaker(final Injector injector, final GeneratedPageMaker shared) {
+        this.injector = injector;
+        this.pageClass = shared.pageClass;
+        this.guicier = shared.guicier;
+        this.membersInjection = new MembersInjection(injector, pageClass);
+        this.rejection = shared.rejection;
+        this.parameterFields = shared.parameterFields;
+    }
+
+    /**
+     * Returns a maker that uses the providers of another injector.
+     * 
+     * @param _injector
+     *            the injector, typically the child injector of a tenant
+     * @return this maker if the injector is the one it was created with
+     */
+    final GeneratedPageMaker forInjector(final Injector _injector) {
+        return _injector == injector ? this : bind(_injector);
+    }
+
+    /**
+     * Creates a maker that uses the providers of another injector, sharing
+     * the bindings and keys of this one.
+     * 
+     * @param _injector
+     *            the injector
+     * @return the new maker
+     */
+    protected abstract GeneratedPageMaker bind(Injector _injector);
+
+    private Constructor<?> getConstructor(final Class<?>[] signature) {
+        try {
+            return pageClass.getDeclaredConstructor(signature);
+        } catch (final NoSuchMethodException e) {
+            throw new WicketRuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the binding for a {@link Parameter} annotated argument.
+     * 
+     * @param signature
+     *            the parameter types of the constructor
+     * @param idx
+     *            the index of the argument
+     * @return the binding
+     */
+    protected final ParameterBinding getParameter(final Class<?>[] signature, final int idx) {
+        final Constructor<?> constructor = getConstructor(signature);
+        final Annotation[][] annos = constructor.getParameterAnnotations();
+        final Parameter param = PageConstructor.getParameterAnnotation(annos[idx]);
+        final Type[] types = constructor.getGenericParameterTypes();
+
+        return new ParameterBinding(guicier, param, signature[idx], types[idx]);
+    }
+
+    /**
+     * Returns the key of an argument that is provided by Guice.
+     * 
+     * @param signature
+     *            the parameter types of the constructor
+     * @param idx
+     *            the index of the argument
+     * @return the key
+     */
+    protected final Key<?> getKey(final Class<?>[] signature, final int idx) {
+        final Constructor<?> constructor = getConstructor(signature);
+        final Annotation[][] annos = constructor.getParameterAnnotations();
+        final Type[] types = constructor.getGenericParameterTypes();
+
+        return PageConstructor.getKey(types[idx], annos[idx]);
+    }
+
+    /**
+     * Returns the provider for an argument that is provided by Guice.
+     * 
+     * @param key
+     *            the key returned by {@link #getKey(Class[], int)}
+     * @return the provider
+     */
+    protected final Provider<?> getProvider(final Key<?> key) {
+        return injector.getProvider(key);
+    }
+
+    /**
+     * Rejects the parameters before any constructor is called if a required
+     * {@link Parameter} annotated field has no value.
+     * 
+     * @param parameters
+     *            the parameters passed to the page
+     */
+    protected final void checkFields(final PageParameters parameters) {
+        if (parameterFields != null) {
+            parameterFields.checkPresent(parameters);
+        }
+    }
+
+    /**
+     * Sets the {@link Parameter} annotated fields of a newly created page.
+     * 
+     * @param page
+     *            the page
+     * @param parameters
+     *            the parameters passed to the page
+     * @return the page
+     */
+    protected final Page setFields(final Page page, final PageParameters parameters) {
+        if (parameterFields != null) {
+            parameterFields.inject(page, parameters);
+        }
+
+        return page;
+    }
+
+    /**
+     * Sets the {@link Parameter} annotated fields and injects the members of a
+     * newly created page. Member injection is skipped if the page class has no
+     * injection points.
+     * 
+     * @param page
+     *            the page
+     * @param parameters
+     *            the parameters passed to the page
+     * @return the page
+     */
+    protected final Page init(final Page page, final PageParameters parameters) {
+        setFields(page, parameters);
+        membersInjection.injectMembers(page);
+
+        return page;
+    }
+
+    /**
+     * Starts collecting the values rejected while the arguments of a
+     * constructor are decoded.
+     * 
+     * @return the errors; to be closed using {@link #closeErrors(ParameterErrors)}
+     */
+    protected static ParameterErrors openErrors() {
+        return ParameterErrors.open();
+    }
+
+    /**
+     * Throws if some values were rejected while the arguments of a
+     * constructor were decoded.
+     * 
+     * @param errors
+     *            the errors returned by {@link #openErrors()}
+     * @throws InvalidParametersException
+     *             if there are errors
+     */
+    protected final void checkErrors(final ParameterErrors errors) {
+        guicier.checkErrors(pageClass, errors);
+    }
+
+    /**
+     * Stops collecting errors.
+     * 
+     * @param errors
+     *            the errors returned by {@link #openErrors()}
+     */
+    protected static void closeErrors(final ParameterErrors errors) {
+        errors.close();
+    }
+
+    /**
+     * Returns the exception thrown if no constructor matches. It has no stack
+     * trace and shares its message with the other rejections of the page.
+     * 
+     * @param parameters
+     *            the parameters passed to the page
+     * @return the exception
+     */
+    protected final WicketRuntimeException noSuitableConstructor(final PageParameters parameters) {
+        return rejection.reject(parameters);
+    }
+}
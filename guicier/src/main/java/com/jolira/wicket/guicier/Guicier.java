@@ -11,7 +11,16 @@ import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -19,6 +28,7 @@ import javax.inject.Inject;
 import org.apache.wicket.WicketRuntimeException;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.util.convert.IConverter;
+import org.apache.wicket.util.convert.converter.AbstractIntegerConverter;
 import org.apache.wicket.util.convert.converter.BigDecimalConverter;
 import org.apache.wicket.util.convert.converter.BooleanConverter;
 import org.apache.wicket.util.convert.converter.ByteConverter;
@@ -36,6 +46,7 @@ import org.apache.wicket.util.string.StringValue;
 
 import com.google.inject.Injector;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 import com.jolira.wicket.guicier.Parameter.NoConverter;
 
 /**
@@ -43,12 +54,39 @@ import com.jolira.wicket.guicier.Parameter.NoConverter;
  */
 @Singleton
 public class Guicier {
-    private class EnumConverter<T extends Enum<T>> implements IConverter<T> {
+    /**
+     * Converts the names or ordinals of the constants of an enum. The
+     * constants are looked up in tables built once per enum class. Names that
+     * do not match exactly are matched ignoring case, unless that is
+     * ambiguous.
+     */
+    private static class EnumConverter<T extends Enum<T>> implements IConverter<T> {
         private static final long serialVersionUID = -5797300013416456562L;
         private final Class<T> type;
+        private final T[] constants;
+        private final Map<String, T> names;
+        private final Map<String, T> upperCaseNames;
 
         EnumConverter(final Class<T> type) {
             this.type = type;
+            this.constants = type.getEnumConstants();
+            this.names = new HashMap<String, T>(constants.length * 2);
+            this.upperCaseNames = new HashMap<String, T>(constants.length * 2);
+
+            final Set<String> ambiguous = new HashSet<String>();
+
+            for (final T constant : constants) {
+                final String name = constant.name();
+                final String upperCase = name.toUpperCase(Locale.ENGLISH);
+
+                names.put(name, constant);
+
+                if (upperCaseNames.put(upperCase, constant) != null) {
+                    ambiguous.add(upperCase);
+                }
+            }
+
+            upperCaseNames.keySet().removeAll(ambiguous);
         }
 
         @Override
@@ -57,22 +95,34 @@ public class Guicier {
                 return null;
             }
 
-            if (!isNumeric(value)) {
-                return Enum.valueOf(type, value);
+            final T constant = find(value);
+
+            if (constant != null) {
+                return constant;
             }
 
-            final int ordinal = Integer.parseInt(value);
-            final T[] constants = type.getEnumConstants();
+            throw new IllegalArgumentException("No enum const " + type + "." + value);
+        }
 
-            for (final T constant : constants) {
-                final int _ordinal = constant.ordinal();
+        /**
+         * Looks up a constant by name or ordinal without throwing.
+         *
+         * @return the constant or {@code null} if there is none
+         */
+        T find(final String value) {
+            if (!isNumeric(value)) {
+                final T constant = names.get(value);
 
-                if (_ordinal == ordinal) {
+                if (constant != null) {
                     return constant;
                 }
+
+                return upperCaseNames.get(value.toUpperCase(Locale.ENGLISH));
             }
 
-            throw new IllegalArgumentException("No enum const " + type + "." + value);
+            final int ordinal = value.length() <= MAX_INT_DIGITS ? Integer.parseInt(value) : -1;
+
+            return ordinal >= 0 && ordinal < constants.length ? constants[ordinal] : null;
         }
 
         @Override
@@ -109,6 +159,14 @@ public class Guicier {
                 return Boolean.FALSE;
             }
 
+            if ("true".equals(value)) {
+                return Boolean.TRUE;
+            }
+
+            if ("false".equals(value)) {
+                return Boolean.FALSE;
+            }
+
             return super.convertToObject(value, locale);
         }
     }
@@ -125,6 +183,12 @@ public class Guicier {
                 return Byte.valueOf((byte) 0);
             }
 
+            final long plain = parsePlain(value, MAX_INT_DIGITS);
+
+            if (plain >= Byte.MIN_VALUE && plain <= Byte.MAX_VALUE) {
+                return Byte.valueOf((byte) plain);
+            }
+
             return super.convertToObject(value, locale);
         }
     }
@@ -141,6 +205,10 @@ public class Guicier {
                 return Character.valueOf('\0');
             }
 
+            if (value.length() == 1) {
+                return Character.valueOf(value.charAt(0));
+            }
+
             return super.convertToObject(value, locale);
         }
     }
@@ -157,6 +225,12 @@ public class Guicier {
                 return Double.valueOf(0);
             }
 
+            final long plain = parsePlain(value, MAX_EXACT_DIGITS);
+
+            if (plain != NOT_PLAIN) {
+                return Double.valueOf(plain);
+            }
+
             return super.convertToObject(value, locale);
         }
     }
@@ -173,6 +247,12 @@ public class Guicier {
                 return Float.valueOf(0);
             }
 
+            final long plain = parsePlain(value, MAX_EXACT_FLOAT_DIGITS);
+
+            if (plain != NOT_PLAIN) {
+                return Float.valueOf(plain);
+            }
+
             return super.convertToObject(value, locale);
         }
     }
@@ -189,6 +269,12 @@ public class Guicier {
                 return Integer.valueOf(0);
             }
 
+            final long plain = parsePlain(value, MAX_INT_DIGITS);
+
+            if (plain != NOT_PLAIN) {
+                return Integer.valueOf((int) plain);
+            }
+
             return super.convertToObject(value, locale);
         }
     }
@@ -205,6 +291,12 @@ public class Guicier {
                 return Long.valueOf(0);
             }
 
+            final long plain = parsePlain(value, MAX_LONG_DIGITS);
+
+            if (plain != NOT_PLAIN) {
+                return Long.valueOf(plain);
+            }
+
             return super.convertToObject(value, locale);
         }
     }
@@ -221,6 +313,12 @@ public class Guicier {
                 return Short.valueOf((short) 0);
             }
 
+            final long plain = parsePlain(value, MAX_INT_DIGITS);
+
+            if (plain >= Short.MIN_VALUE && plain <= Short.MAX_VALUE) {
+                return Short.valueOf((short) plain);
+            }
+
             return super.convertToObject(value, locale);
         }
     }
@@ -242,13 +340,96 @@ public class Guicier {
         }
     }
 
-    private static String[] get(@Nullable final PageParameters parameters, final String key) {
+    /**
+     * Returned by {@link #parsePlain(String, int)} for values that have to be
+     * parsed by the Wicket converters.
+     */
+    private static final long NOT_PLAIN = Long.MIN_VALUE;
+
+    /**
+     * Any number with that many digits fits into an {@code int}.
+     */
+    private static final int MAX_INT_DIGITS = 9;
+
+    /**
+     * Any number with that many digits fits into a {@code long}.
+     */
+    private static final int MAX_LONG_DIGITS = 18;
+
+    /**
+     * Any number with that many digits is represented exactly by a
+     * {@code double}.
+     */
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    /**
+     * Any number with that many digits is represented exactly by a
+     * {@code float}.
+     */
+    private static final int MAX_EXACT_FLOAT_DIGITS = 7;
+
+    /**
+     * Parses plain decimal integers, such as {@code 42} or {@code -7}, which
+     * make up nearly all numeric parameters, without going through a
+     * {@link java.text.NumberFormat}. Everything else, such as grouping
+     * separators, decimal fractions or invalid values, is left to the Wicket
+     * converters, so the results and errors are the same.
+     * 
+     * @param value
+     *            the value
+     * @param maxDigits
+     *            the maximum number of digits
+     * @return the value or {@link #NOT_PLAIN}
+     */
+    private static long parsePlain(final String value, final int maxDigits) {
+        final int length = value.length();
+
+        if (length == 0) {
+            return NOT_PLAIN;
+        }
+
+        final boolean negative = value.charAt(0) == '-';
+        final int start = negative ? 1 : 0;
+        final int digits = length - start;
+
+        if (digits == 0 || digits > maxDigits) {
+            return NOT_PLAIN;
+        }
+
+        long result = 0;
+
+        for (int idx = start; idx < length; idx++) {
+            final char c = value.charAt(idx);
+
+            if (c < '0' || c > '9') {
+                return NOT_PLAIN;
+            }
+
+            result = result * 10 + (c - '0');
+        }
+
+        return negative ? -result : result;
+    }
+
+    /**
+     * Copies the values of a parameter, unless there are more than the
+     * verifier accepts.
+     *
+     * @return the values or {@code null} if there are too many
+     */
+    private static String[] get(@Nullable final PageParameters parameters, final Parameter param,
+            final Verifier verifier) {
         if (parameters == null) {
             return new String[0];
         }
 
-        final Collection<StringValue> values = parameters.getValues(key);
+        final Collection<StringValue> values = parameters.getValues(param.value());
         final int size = values.size();
+
+        if (!checkValueCount(param, verifier, size)) {
+            return null;
+        }
+
         final String[] result = new String[size];
 
         int idx = 0;
@@ -454,27 +635,192 @@ public class Guicier {
         return char.class.equals(left) && Character.class.equals(right);
     }
 
-    private static void verifyString(final Parameter param, final String value) {
-        final String verifier = param.verifier();
+    /**
+     * Verifies a value. Values that do not match are recorded in the
+     * {@link ParameterErrors} of the current thread, or rejected by throwing
+     * an exception if the thread does not collect errors.
+     *
+     * @return {@code true} if the value matches
+     */
+    private static boolean verifyString(final Parameter param, final Verifier verifier, final String value) {
+        final int maxLength = verifier.getMaxLength();
 
-        if (verifier == null || verifier.isEmpty()) {
-            return;
+        if (value.length() > maxLength) {
+            return invalid(param, value, "longer than " + maxLength + " characters");
+        }
+
+        if (verifier.matches(value)) {
+            return true;
         }
 
-        if (!value.matches(verifier)) {
+        final ParameterErrors errors = ParameterErrors.current();
+
+        if (errors == null) {
             throw new IllegalArgumentException("'" + value + "' does not match verifier '" + verifier + "'.");
         }
+
+        errors.add(param.value(), value, "does not match verifier '" + verifier + "'");
+
+        return false;
+    }
+
+    /**
+     * Verifies all values of a parameter without copying them, for callers
+     * that only use the first one.
+     *
+     * @return the first value; {@code null} if there is none or if any value
+     *         was rejected
+     */
+    private static String verifyValues(@Nullable final PageParameters parameters, final Parameter param,
+            final Verifier verifier) {
+        if (parameters == null) {
+            return null;
+        }
+
+        final List<StringValue> values = parameters.getValues(param.value());
+        final int size = values.size();
+
+        if (size == 0 || !checkValueCount(param, verifier, size)) {
+            return null;
+        }
+
+        boolean valid = true;
+
+        for (final StringValue value : values) {
+            valid &= verifyString(param, verifier, value.toString());
+        }
+
+        return valid ? values.get(0).toString() : null;
+    }
+
+    /**
+     * Checks the number of values of a parameter before they are verified or
+     * converted.
+     *
+     * @return {@code true} if the verifier accepts that many values
+     */
+    private static boolean checkValueCount(final Parameter param, final Verifier verifier, final int count) {
+        final int maxValues = verifier.getMaxValues();
+
+        if (count <= maxValues) {
+            return true;
+        }
+
+        return invalid(param, null, count + " values, more than " + maxValues);
+    }
+
+    /**
+     * Records a parameter that was rejected as a whole in the
+     * {@link ParameterErrors} of the current thread, or throws if the thread
+     * does not collect errors.
+     *
+     * @return {@code false}
+     */
+    private static boolean invalid(final Parameter param, @Nullable final String value, final String reason) {
+        final ParameterErrors errors = ParameterErrors.current();
+
+        if (errors == null) {
+            throw new IllegalArgumentException("parameter '" + param.value() + "': " + reason);
+        }
+
+        errors.add(param.value(), value, reason);
+
+        return false;
+    }
+
+    private static boolean hasDigit(final String value) {
+        final int length = value.length();
+
+        for (int idx = 0; idx < length; idx++) {
+            final char c = value.charAt(idx);
+
+            if (c >= '0' && c <= '9') {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static <T> T rejected(final ParameterErrors errors, final Parameter param, final Class<T> type,
+            final String value, final String reason) {
+        errors.add(param.value(), value, reason);
+
+        return getNullValue(type);
     }
 
     private final Injector injector;
 
+    /**
+     * The resolved converters, keyed by the value type and the
+     * {@link Parameter#converter()} class. Converters are resolved once, so
+     * they have to be stateless, as Wicket converters usually are. The map
+     * belongs to this instance and goes away with the injector.
+     */
+    private final ConcurrentMap<Class<?>, ConcurrentMap<Class<?>, IConverter<?>>> converters =
+            new ConcurrentHashMap<Class<?>, ConcurrentMap<Class<?>, IConverter<?>>>();
+
+    /**
+     * The number of rejected values, keyed by the name of the class that
+     * rejected them and the name of the parameter.
+     */
+    private final ConcurrentMap<String, AtomicLong> invalidCounts = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * The limits of parameters that do not declare their own. Unlimited,
+     * unless the application binds {@link Parameter#MAX_VALUES} or
+     * {@link Parameter#MAX_LENGTH}.
+     */
+    private int maxValues = Integer.MAX_VALUE;
+    private int maxLength = Integer.MAX_VALUE;
+
     @Inject
     Guicier(final Injector injector) {
         this.injector = injector;
     }
 
+    /**
+     * Returns the verifier of a parameter, which also enforces the limits of
+     * the parameter or the defaults of the application.
+     * 
+     * @param param
+     *            the parameter
+     * @return the verifier
+     */
+    Verifier getVerifier(final Parameter param) {
+        final int _maxValues = param.maxValues();
+        final int _maxLength = param.maxLength();
+
+        return Verifier.get(param.verifier(), _maxValues >= 0 ? _maxValues : maxValues, _maxLength >= 0 ? _maxLength
+                : maxLength);
+    }
+
+    /**
+     * Replaces the default {@link Parameter#maxLength()}.
+     * 
+     * @param maxLength
+     *            the maximum length of each value; negative for no limit
+     */
+    @com.google.inject.Inject(optional = true)
+    void setMaxLength(@Named(Parameter.MAX_LENGTH) final int maxLength) {
+        this.maxLength = maxLength >= 0 ? maxLength : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Replaces the default {@link Parameter#maxValues()}.
+     * 
+     * @param maxValues
+     *            the maximum number of values of a parameter; negative for no
+     *            limit
+     */
+    @com.google.inject.Inject(optional = true)
+    void setMaxValues(@Named(Parameter.MAX_VALUES) final int maxValues) {
+        this.maxValues = maxValues >= 0 ? maxValues : Integer.MAX_VALUE;
+    }
+
     private int findMatchingParameter(final int idx, final Object arg, final Class<? extends Object> argClass,
-            final Class<?>[] types, final Annotation[][] annos, final PageParameters params, final Locale locale) {
+            final Class<?>[] types, final Annotation[][] annos, final PageParameters params, final Locale locale,
+            final StringBuilder buf) {
         if (idx >= types.length) {
             return -1;
         }
@@ -482,11 +828,11 @@ public class Guicier {
         final Parameter param = getParameter(annos[idx]);
 
         if (param == null) {
-            return findMatchingParameter(idx + 1, arg, argClass, types, annos, params, locale);
+            return findMatchingParameter(idx + 1, arg, argClass, types, annos, params, locale, buf);
         }
 
         if (isAssignableFrom(types[idx], argClass)) {
-            put(params, param, arg, types[idx], locale);
+            put(params, param, arg, types[idx], locale, buf);
 
             return idx + 1;
         }
@@ -495,7 +841,7 @@ public class Guicier {
             return -1;
         }
 
-        return findMatchingParameter(idx + 1, arg, argClass, types, annos, params, locale);
+        return findMatchingParameter(idx + 1, arg, argClass, types, annos, params, locale, buf);
     }
 
     /**
@@ -510,13 +856,15 @@ public class Guicier {
     public PageParameters get(final Class<?> pageClass, final Object... args) {
         final Constructor<?>[] constructors = pageClass.getDeclaredConstructors();
         final Locale locale = Locale.getDefault();
+        // shared by all values encoded by ParameterConverters
+        final StringBuilder buf = new StringBuilder();
 
         for (final Constructor<?> constructor : constructors) {
             if (!isAnnotationPresent(constructor)) {
                 continue;
             }
 
-            final PageParameters result = get(constructor, args, locale);
+            final PageParameters result = get(constructor, args, locale, buf);
 
             if (result != null) {
                 return result;
@@ -527,7 +875,8 @@ public class Guicier {
                 + Arrays.toString(args));
     }
 
-    private PageParameters get(final Constructor<?> constructor, final Object[] args, final Locale locale) {
+    private PageParameters get(final Constructor<?> constructor, final Object[] args, final Locale locale,
+            final StringBuilder buf) {
         final Class<?>[] types = constructor.getParameterTypes();
         final PageParameters params = new PageParameters();
         final Annotation[][] annos = constructor.getParameterAnnotations();
@@ -536,7 +885,7 @@ public class Guicier {
         for (final Object arg : args) {
             final Class<? extends Object> argClass = arg.getClass();
 
-            paramIdx = findMatchingParameter(paramIdx, arg, argClass, types, annos, params, locale);
+            paramIdx = findMatchingParameter(paramIdx, arg, argClass, types, annos, params, locale, buf);
 
             if (paramIdx < 0) {
                 return null;
@@ -560,6 +909,12 @@ public class Guicier {
 
     <T> T get(final PageParameters parameters, final Parameter param, final Class<T> type,
             final PageParameters cleansed, final boolean isFirst) {
+        return get(parameters, param, type, null, null, cleansed, isFirst);
+    }
+
+    <T> T get(final PageParameters parameters, final Parameter param, final Class<T> type,
+            @Nullable final IConverter<?> converter, @Nullable final Verifier verifier,
+            final PageParameters cleansed, final boolean isFirst) {
         if (PageParameters.class.isAssignableFrom(type)) {
             @SuppressWarnings("unchecked")
             final T params = isFirst ? (T) parameters : (T) cleansed;
@@ -568,16 +923,44 @@ public class Guicier {
         }
 
         final String key = param.value();
-        final String[] value = get(parameters, key);
+        final Verifier _verifier = verifier != null ? verifier : getVerifier(param);
+
+        if (cleansed == null && !type.isArray()) {
+            // only the first value is converted, so there is no need to copy them all
+            final String first = verifyValues(parameters, param, _verifier);
+
+            if (first == null) {
+                return getNullValue(type);
+            }
+
+            return getValue(param, type, converter, first);
+        }
+
+        final String[] value = get(parameters, param, _verifier);
 
-        if (value.length == 0) {
+        if (value == null || value.length == 0) {
             return getNullValue(type);
         }
 
-        cleansed.remove(key);
+        if (cleansed != null) {
+            cleansed.remove(key);
+        }
+
+        boolean valid = true;
+
         for (final String _param : value) {
-            verifyString(param, _param);
-            cleansed.add(key, _param);
+            if (!verifyString(param, _verifier, _param)) {
+                valid = false;
+                continue;
+            }
+
+            if (cleansed != null) {
+                cleansed.add(key, _param);
+            }
+        }
+
+        if (!valid) {
+            return getNullValue(type);
         }
 
         final Class<?> componentType = type.getComponentType();
@@ -590,13 +973,20 @@ public class Guicier {
                 return getNullValue(casted);
             }
 
-            return getValue(param, type, value[0]);
+            return getValue(param, type, converter, value[0]);
+        }
+
+        if (componentType.isPrimitive()) {
+            @SuppressWarnings("unchecked")
+            final T array = (T) getPrimitiveArray(param, componentType, converter, value);
+
+            return array;
         }
 
         final Object[] _array = (Object[]) Array.newInstance(componentType, value.length);
 
         for (int idx = 0; idx < value.length; idx++) {
-            _array[idx] = getValue(param, componentType, value[idx]);
+            _array[idx] = getValue(param, componentType, converter, value[idx]);
         }
 
         @SuppressWarnings("unchecked")
@@ -605,7 +995,457 @@ public class Guicier {
         return array_;
     }
 
+    /**
+     * Decodes the values of a collection in one pass, converting each value
+     * using the converter of the elements.
+     * 
+     * @param parameters
+     *            the parameters passed to the page
+     * @param param
+     *            the parameter
+     * @param collectionType
+     *            the type of the collection
+     * @param converter
+     *            the converter of the elements (may be {@code null})
+     * @param verifier
+     *            the verifier
+     * @param cleansed
+     *            the parameters to which the verified values are added (may be
+     *            {@code null})
+     * @return the collection or {@code null} if there are no values
+     */
+    Collection<Object> getCollection(@Nullable final PageParameters parameters, final Parameter param,
+            final CollectionType collectionType, @Nullable final IConverter<?> converter, final Verifier verifier,
+            @Nullable final PageParameters cleansed) {
+        if (parameters == null) {
+            return null;
+        }
+
+        final String key = param.value();
+        final List<StringValue> values = parameters.getValues(key);
+        final int size = values.size();
+
+        if (size == 0 || !checkValueCount(param, verifier, size)) {
+            return null;
+        }
+
+        final Class<?> elementType = collectionType.getElementType();
+        final Collection<Object> result = collectionType.newCollection(size);
+
+        if (cleansed != null) {
+            cleansed.remove(key);
+        }
+
+        final ParameterErrors errors = ParameterErrors.current();
+        boolean valid = true;
+
+        for (int idx = 0; idx < size; idx++) {
+            final String value = values.get(idx).toString();
+
+            if (!verifyString(param, verifier, value)) {
+                valid = false;
+                continue;
+            }
+
+            if (cleansed != null) {
+                cleansed.add(key, value);
+            }
+
+            final int rejected = errors != null ? errors.size() : 0;
+            final Object element = getValue(param, elementType, converter, value);
+
+            // not all collections accept null, so elements are never null
+            if (element == null) {
+                if (value.isEmpty()) {
+                    continue; // an empty value such as ?states= adds nothing
+                }
+
+                // conversion failures have already been recorded
+                if (errors == null || errors.size() == rejected) {
+                    invalid(param, value, "converted to null");
+                }
+
+                valid = false;
+                continue;
+            }
+
+            result.add(element);
+        }
+
+        return valid ? result : null;
+    }
+
+    /**
+     * Verifies the values of a parameter without converting them, so they can
+     * be converted later.
+     * 
+     * @param parameters
+     *            the parameters passed to the page (may be {@code null})
+     * @param param
+     *            the parameter
+     * @param verifier
+     *            the verifier
+     * @param cleansed
+     *            the parameters to which the verified values are added (may be
+     *            {@code null})
+     * @return the verified values, keyed by the name of the parameter
+     */
+    PageParameters verify(@Nullable final PageParameters parameters, final Parameter param,
+            final Verifier verifier, @Nullable final PageParameters cleansed) {
+        final PageParameters verified = new PageParameters();
+
+        if (parameters == null) {
+            return verified;
+        }
+
+        final String key = param.value();
+        final List<StringValue> values = parameters.getValues(key);
+        final int size = values.size();
+
+        if (!checkValueCount(param, verifier, size)) {
+            return verified;
+        }
+
+        if (size > 0 && cleansed != null) {
+            cleansed.remove(key);
+        }
+
+        for (int idx = 0; idx < size; idx++) {
+            final String value = values.get(idx).toString();
+
+            if (!verifyString(param, verifier, value)) {
+                continue;
+            }
+
+            verified.add(key, value);
+
+            if (cleansed != null) {
+                cleansed.add(key, value);
+            }
+        }
+
+        return verified;
+    }
+
+    /**
+     * Throws if some values were rejected while decoding the arguments of a
+     * page, component or resource. The rejected values are counted per class
+     * and parameter.
+     * 
+     * @param target
+     *            the class of the page, component or resource
+     * @param errors
+     *            the errors collected while decoding
+     * @throws InvalidParametersException
+     *             if there are errors
+     */
+    void checkErrors(final Class<?> target, final ParameterErrors errors) {
+        final int size = errors.size();
+
+        if (size == 0) {
+            return;
+        }
+
+        for (int idx = 0; idx < size; idx++) {
+            final String key = getCountKey(target, errors.getName(idx));
+            final AtomicLong count = invalidCounts.get(key);
+
+            if (count != null) {
+                count.incrementAndGet();
+                continue;
+            }
+
+            final AtomicLong existing = invalidCounts.putIfAbsent(key, new AtomicLong(1));
+
+            if (existing != null) {
+                existing.incrementAndGet();
+            }
+        }
+
+        throw new InvalidParametersException(target, errors.copy());
+    }
+
+    private static String getCountKey(final Class<?> target, final String name) {
+        return target.getName() + '#' + name;
+    }
+
+    /**
+     * Returns the number of values of a parameter that have been rejected by
+     * a page, component or resource, for monitoring.
+     * 
+     * @param target
+     *            the class of the page, component or resource
+     * @param name
+     *            the name of the parameter
+     * @return the number of rejected values
+     */
+    public long getInvalidParameterCount(final Class<?> target, final String name) {
+        final AtomicLong count = invalidCounts.get(getCountKey(target, name));
+
+        return count != null ? count.get() : 0;
+    }
+
+    /**
+     * Returns the number of rejected values of all parameters, for monitoring.
+     * 
+     * @return the counts, keyed by the name of the class that rejected the
+     *         values and the name of the parameter, separated by {@code #}
+     */
+    public Map<String, Long> getInvalidParameterCounts() {
+        final Map<String, Long> counts = new TreeMap<String, Long>();
+
+        for (final Map.Entry<String, AtomicLong> entry : invalidCounts.entrySet()) {
+            counts.put(entry.getKey(), Long.valueOf(entry.getValue().get()));
+        }
+
+        return counts;
+    }
+
+    /**
+     * Decodes the values of a primitive array. Plain numbers are parsed
+     * straight into {@code int[]}, {@code long[]}, {@code float[]} and
+     * {@code double[]} arrays, unless the parameter has its own converter;
+     * all other values are converted as usual and unboxed.
+     */
+    private Object getPrimitiveArray(final Parameter param, final Class<?> componentType,
+            @Nullable final IConverter<?> converter, final String[] values) {
+        final int length = values.length;
+        final boolean isDefault = NoConverter.class.equals(param.converter());
+
+        if (converter instanceof ParameterConverter) {
+            final Object array = getPrimitiveArray(param, componentType, (ParameterConverter<?>) converter, values);
+
+            if (array != null) {
+                return array;
+            }
+        }
+
+        if (int.class.equals(componentType)) {
+            final int[] array = new int[length];
+
+            for (int idx = 0; idx < length; idx++) {
+                final long plain = isDefault ? parsePlain(values[idx], MAX_INT_DIGITS) : NOT_PLAIN;
+
+                array[idx] = plain != NOT_PLAIN ? (int) plain : ((Number) getElement(param, componentType, converter, values[idx])).intValue();
+            }
+
+            return array;
+        }
+
+        if (long.class.equals(componentType)) {
+            final long[] array = new long[length];
+
+            for (int idx = 0; idx < length; idx++) {
+                final long plain = isDefault ? parsePlain(values[idx], MAX_LONG_DIGITS) : NOT_PLAIN;
+
+                array[idx] = plain != NOT_PLAIN ? plain : ((Number) getElement(param, componentType, converter, values[idx])).longValue();
+            }
+
+            return array;
+        }
+
+        if (double.class.equals(componentType)) {
+            final double[] array = new double[length];
+
+            for (int idx = 0; idx < length; idx++) {
+                final long plain = isDefault ? parsePlain(values[idx], MAX_EXACT_DIGITS) : NOT_PLAIN;
+
+                array[idx] = plain != NOT_PLAIN ? plain : ((Number) getElement(param, componentType, converter, values[idx])).doubleValue();
+            }
+
+            return array;
+        }
+
+        if (float.class.equals(componentType)) {
+            final float[] array = new float[length];
+
+            for (int idx = 0; idx < length; idx++) {
+                final long plain = isDefault ? parsePlain(values[idx], MAX_EXACT_FLOAT_DIGITS) : NOT_PLAIN;
+
+                array[idx] = plain != NOT_PLAIN ? plain : ((Number) getElement(param, componentType, converter, values[idx])).floatValue();
+            }
+
+            return array;
+        }
+
+        // booleans, bytes, chars and shorts mostly come from the boxing caches
+        final Object array = Array.newInstance(componentType, length);
+
+        for (int idx = 0; idx < length; idx++) {
+            Array.set(array, idx, getElement(param, componentType, converter, values[idx]));
+        }
+
+        return array;
+    }
+
+    /**
+     * Converts a value of a primitive array. A converter that returns
+     * {@code null}, for instance for an empty value, rejects the value, as
+     * {@code null} cannot be stored in the array.
+     */
+    private Object getElement(final Parameter param, final Class<?> componentType,
+            @Nullable final IConverter<?> converter, final String value) {
+        final Object element = getValue(param, componentType, converter, value);
+
+        if (element != null) {
+            return element;
+        }
+
+        invalid(param, value, "no value");
+
+        return getNullValue(componentType);
+    }
+
+    /**
+     * Decodes the values of a primitive array using the primitive variants of
+     * a {@link ParameterConverter}, which do not box the values.
+     * 
+     * @return the array or {@code null} if the converter has no primitive
+     *         variant for the component type
+     */
+    private static Object getPrimitiveArray(final Parameter param, final Class<?> componentType,
+            final ParameterConverter<?> converter, final String[] values) {
+        final int length = values.length;
+
+        if (int.class.equals(componentType)) {
+            final int[] array = new int[length];
+
+            for (int idx = 0; idx < length; idx++) {
+                final String value = values[idx];
+
+                try {
+                    array[idx] = converter.parseInt(value, 0, value.length());
+                } catch (final RuntimeException e) {
+                    conversionFailed(param, value, e);
+                }
+            }
+
+            return array;
+        }
+
+        if (long.class.equals(componentType)) {
+            final long[] array = new long[length];
+
+            for (int idx = 0; idx < length; idx++) {
+                final String value = values[idx];
+
+                try {
+                    array[idx] = converter.parseLong(value, 0, value.length());
+                } catch (final RuntimeException e) {
+                    conversionFailed(param, value, e);
+                }
+            }
+
+            return array;
+        }
+
+        if (double.class.equals(componentType)) {
+            final double[] array = new double[length];
+
+            for (int idx = 0; idx < length; idx++) {
+                final String value = values[idx];
+
+                try {
+                    array[idx] = converter.parseDouble(value, 0, value.length());
+                } catch (final RuntimeException e) {
+                    conversionFailed(param, value, e);
+                }
+            }
+
+            return array;
+        }
+
+        if (float.class.equals(componentType)) {
+            final float[] array = new float[length];
+
+            for (int idx = 0; idx < length; idx++) {
+                final String value = values[idx];
+
+                try {
+                    array[idx] = converter.parseFloat(value, 0, value.length());
+                } catch (final RuntimeException e) {
+                    conversionFailed(param, value, e);
+                }
+            }
+
+            return array;
+        }
+
+        if (boolean.class.equals(componentType)) {
+            final boolean[] array = new boolean[length];
+
+            for (int idx = 0; idx < length; idx++) {
+                final String value = values[idx];
+
+                try {
+                    array[idx] = converter.parseBoolean(value, 0, value.length());
+                } catch (final RuntimeException e) {
+                    conversionFailed(param, value, e);
+                }
+            }
+
+            return array;
+        }
+
+        return null;
+    }
+
+    /**
+     * Resolves the converter for the values of a parameter ahead of time.
+     * 
+     * @param param
+     *            the parameter
+     * @param type
+     *            the type of the parameter; the component type is used for
+     *            arrays
+     * @return the converter or {@code null} if the values do not need to be
+     *         converted or no converter is known; in the latter case the error
+     *         is reported when a value is converted.
+     */
+    IConverter<?> findConverter(final Parameter param, final Class<?> type) {
+        final Class<?> valueType = type.isArray() ? type.getComponentType() : type;
+
+        if (valueType.isAssignableFrom(String.class) || PageParameters.class.isAssignableFrom(valueType)) {
+            return null;
+        }
+
+        if (getConverterClass(param, valueType) == null && !valueType.isEnum()) {
+            return null;
+        }
+
+        return getConverter(param, valueType);
+    }
+
+    @SuppressWarnings("unchecked")
     private <T> IConverter<T> getConverter(final Parameter param, final Class<T> type) {
+        final ConcurrentMap<Class<?>, IConverter<?>> resolved = getConverters(type);
+        final Class<?> key = param.converter();
+        final IConverter<?> converter = resolved.get(key);
+
+        if (converter != null) {
+            return (IConverter<T>) converter;
+        }
+
+        final IConverter<T> _converter = resolveConverter(param, type);
+        final IConverter<?> existing = resolved.putIfAbsent(key, _converter);
+
+        return existing != null ? (IConverter<T>) existing : _converter;
+    }
+
+    private ConcurrentMap<Class<?>, IConverter<?>> getConverters(final Class<?> type) {
+        final ConcurrentMap<Class<?>, IConverter<?>> resolved = converters.get(type);
+
+        if (resolved != null) {
+            return resolved;
+        }
+
+        final ConcurrentMap<Class<?>, IConverter<?>> _resolved = new ConcurrentHashMap<Class<?>, IConverter<?>>(2);
+        final ConcurrentMap<Class<?>, IConverter<?>> existing = converters.putIfAbsent(type, _resolved);
+
+        return existing != null ? existing : _resolved;
+    }
+
+    private <T> IConverter<T> resolveConverter(final Parameter param, final Class<T> type) {
         final Class<? extends IConverter<T>> converterClass = getConverterClass(param, type);
 
         if (converterClass != null) {
@@ -622,7 +1462,8 @@ public class Guicier {
         return converter;
     }
 
-    private <T> T getValue(final Parameter param, final Class<T> type, final String value) {
+    private <T> T getValue(final Parameter param, final Class<T> type, @Nullable final IConverter<?> resolved,
+            final String value) {
         if (type.isAssignableFrom(String.class)) {
             @SuppressWarnings("unchecked")
             final T casted = (T) value;
@@ -630,20 +1471,154 @@ public class Guicier {
             return casted;
         }
 
-        final IConverter<T> converter = getConverter(param, type);
-        final String strValue = value.toString();
+        @SuppressWarnings("unchecked")
+        final IConverter<T> converter = resolved != null ? (IConverter<T>) resolved : getConverter(param, type);
+
+        // the most common malformed values are rejected without throwing
+        if (converter instanceof EnumConverter) {
+            final Object constant = value.isEmpty() ? null : ((EnumConverter<?>) converter).find(value);
+
+            if (constant != null) {
+                return type.cast(constant);
+            }
+
+            final ParameterErrors errors = ParameterErrors.current();
+
+            if (errors != null && !value.isEmpty()) {
+                return rejected(errors, param, type, value, "not a constant of " + type.getName());
+            }
+        } else if (converter instanceof AbstractIntegerConverter && !value.isEmpty() && !hasDigit(value)) {
+            final ParameterErrors errors = ParameterErrors.current();
+
+            if (errors != null) {
+                return rejected(errors, param, type, value, "not a number");
+            }
+        }
+
+        try {
+            if (converter instanceof ParameterConverter) {
+                @SuppressWarnings("unchecked")
+                final ParameterConverter<T> parser = (ParameterConverter<T>) converter;
+
+                return parser.parse(value, 0, value.length());
+            }
+
+            return converter.convertToObject(value, null);
+        } catch (final RuntimeException e) {
+            conversionFailed(param, value, e);
 
-        return converter.convertToObject(strValue, null);
+            return getNullValue(type);
+        }
+    }
+
+    /**
+     * Records a value that could not be converted in the
+     * {@link ParameterErrors} of the current thread, or rethrows the
+     * exception if the thread does not collect errors.
+     */
+    private static void conversionFailed(final Parameter param, final String value, final RuntimeException e) {
+        final ParameterErrors errors = ParameterErrors.current();
+
+        if (errors == null) {
+            throw e;
+        }
+
+        errors.add(param.value(), value, String.valueOf(e.getMessage()));
     }
 
     private <T> void put(final PageParameters params, final Parameter param, final Object arg, final Class<T> type,
-            final Locale locale) {
+            final Locale locale, final StringBuilder buf) {
         final String name = param.value();
+
+        if (type.isArray()) {
+            putArray(params, param, arg, type.getComponentType(), locale, buf);
+            return;
+        }
+
+        if (arg instanceof Collection) {
+            putCollection(params, param, (Collection<?>) arg, locale, buf);
+            return;
+        }
+
         final IConverter<T> converter = getConverter(param, type);
         @SuppressWarnings("unchecked")
         final T _arg = (T) arg;
-        final String converted = converter.convertToString(_arg, locale);
+        final String converted = encode(converter, _arg, locale, buf);
 
         params.set(name, converted);
     }
+
+    /**
+     * Encodes a value, preferring
+     * {@link ParameterConverter#append(StringBuilder, Object)}.
+     * 
+     * @param buf
+     *            the buffer used by {@link ParameterConverter}s, which is
+     *            reused for all values encoded by one call of
+     *            {@link #get(Class, Object...)}
+     */
+    private static <T> String encode(final IConverter<T> converter, final T value, final Locale locale,
+            final StringBuilder buf) {
+        if (!(converter instanceof ParameterConverter)) {
+            return converter.convertToString(value, locale);
+        }
+
+        @SuppressWarnings("unchecked")
+        final ParameterConverter<T> encoder = (ParameterConverter<T>) converter;
+
+        buf.setLength(0);
+        encoder.append(buf, value);
+
+        return buf.toString();
+    }
+
+    /**
+     * Adds one value per element of a collection, converted using the
+     * converter of the class of the element.
+     */
+    private void putCollection(final PageParameters params, final Parameter param, final Collection<?> collection,
+            final Locale locale, final StringBuilder buf) {
+        final String name = param.value();
+
+        params.remove(name);
+
+        for (final Object element : collection) {
+            if (element == null) {
+                continue;
+            }
+
+            final Class<?> cls = element instanceof Enum ? ((Enum<?>) element).getDeclaringClass() : element
+                    .getClass();
+
+            params.add(name, toString(param, cls, element, locale, buf));
+        }
+    }
+
+    private <T> String toString(final Parameter param, final Class<T> type, final Object value, final Locale locale,
+            final StringBuilder buf) {
+        final IConverter<T> converter = getConverter(param, type);
+
+        return encode(converter, type.cast(value), locale, buf);
+    }
+
+    /**
+     * Adds one value per element of an array, including primitive arrays.
+     */
+    private <T> void putArray(final PageParameters params, final Parameter param, final Object array,
+            final Class<T> componentType, final Locale locale, final StringBuilder buf) {
+        final String name = param.value();
+        final IConverter<T> converter = getConverter(param, componentType);
+        final int length = Array.getLength(array);
+
+        params.remove(name);
+
+        for (int idx = 0; idx < length; idx++) {
+            @SuppressWarnings("unchecked")
+            final T element = (T) Array.get(array, idx);
+
+            if (element != null) {
+                params.add(name, encode(converter, element, locale, buf));
+            }
+        }
+    }
 }
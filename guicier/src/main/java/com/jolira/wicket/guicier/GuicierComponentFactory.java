@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.wicket.Component;
+
+import com.google.inject.Injector;
+
+/**
+ * Creates panels and other components using their {@code @Inject} annotated
+ * constructor, the way {@link GuicierPageFactory} creates pages. Arguments
+ * annotated using {@link Argument} are passed by the caller, arguments
+ * annotated using {@link Parameter} are decoded from the
+ * {@link org.apache.wicket.request.mapper.parameter.PageParameters} passed by
+ * the caller, and all other arguments are provided by Guice:
+ *
+ * <pre>
+ * public class ChartPanel extends Panel {
+ *     &#064;Inject
+ *     ChartPanel(&#064;Argument String id, &#064;Argument IModel&lt;Chart&gt; model, ChartService service) {
+ *         super(id, model);
+ *     }
+ * }
+ *
+ * final ComponentMaker&lt;ChartPanel&gt; maker = factory.getMaker(ChartPanel.class);
+ *
+ * for (final Chart chart : charts) {
+ *     add(maker.create(&quot;chart&quot; + idx++, Model.of(chart)));
+ * }
+ * </pre>
+ *
+ * The constructor is analyzed once per class and compiled into a plan, so
+ * creating many components of a class does not use reflection. Components
+ * created this way use the injector of the factory, also in the multi-tenant
+ * mode.
+ *
+ * @author jfk
+ * @since 2.5
+ */
+@Singleton
+public class GuicierComponentFactory {
+    private final Injector injector;
+    private final Guicier guicier;
+
+    /**
+     * The makers, stored with the component classes.
+     */
+    private final ClassValue<ComponentConstructor<?>> makers = new ClassValue<ComponentConstructor<?>>() {
+        @Override
+        protected ComponentConstructor<?> computeValue(final Class<?> type) {
+            return newConstructor(type.asSubclass(Component.class));
+        }
+    };
+
+    /**
+     * Create a new factory.
+     *
+     * @param injector
+     *            the injector providing the arguments and members of the
+     *            components
+     * @param guicier
+     *            decodes the {@link Parameter} annotated arguments
+     */
+    @Inject
+    public GuicierComponentFactory(final Injector injector, final Guicier guicier) {
+        this.injector = injector;
+        this.guicier = guicier;
+    }
+
+    /**
+     * Returns the maker for a component class, creating it if necessary. Hold
+     * on to the maker when creating many components of the same class.
+     *
+     * @param type
+     *            the component class
+     * @param <C>
+     *            the component type
+     * @return the maker
+     */
+    @SuppressWarnings("unchecked")
+    public <C extends Component> ComponentMaker<C> getMaker(final Class<C> type) {
+        return (ComponentMaker<C>) makers.get(type);
+    }
+
+    /**
+     * Invalidates the maker of a component class, for instance after the
+     * class has been redefined.
+     *
+     * @param type
+     *            the component class
+     */
+    public void invalidate(final Class<? extends Component> type) {
+        makers.remove(type);
+        MembersInjection.invalidate(type);
+    }
+
+    private <C extends Component> ComponentConstructor<C> newConstructor(final Class<C> type) {
+        return new ComponentConstructor<C>(injector, guicier, type);
+    }
+
+    /**
+     * Creates a component.
+     *
+     * @param type
+     *            the component class
+     * @param arguments
+     *            the {@link Argument} annotated constructor arguments, in the
+     *            order they are declared
+     * @param <C>
+     *            the component type
+     * @return the new component
+     */
+    public <C extends Component> C newComponent(final Class<C> type, final Object... arguments) {
+        final ComponentMaker<C> maker = getMaker(type);
+
+        return maker.create(arguments);
+    }
+}
@@ -3,8 +3,23 @@
  */
 package com.jolira.wicket.guicier;
 
-import java.util.Map;
-import java.util.WeakHashMap;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -13,21 +28,102 @@ import org.apache.wicket.IPageFactory;
 import org.apache.wicket.Page;
 import org.apache.wicket.request.component.IRequestablePage;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.google.inject.ConfigurationException;
 import com.google.inject.Injector;
+import com.google.inject.name.Named;
 
 /**
  * @author jfk
  */
 @Singleton
 public class GuicierPageFactory implements IPageFactory {
-    private final static class PageCreatorProxy implements PageMaker {
-        private final Injector injector;
+    /**
+     * The makers of one tenant, which share everything but the providers
+     * with the makers of the application injector.
+     */
+    private final class TenantMakers extends ClassValue<PageMaker> {
+        private final Injector tenant;
+
+        TenantMakers(final Injector tenant) {
+            this.tenant = tenant;
+        }
+
+        @Override
+        protected PageMaker computeValue(final Class<?> type) {
+            return getCreator(type.asSubclass(IRequestablePage.class)).forTenant(tenant);
+        }
+    }
+
+    private final class PageCreatorProxy implements PageMaker {
         private final Class<? extends IRequestablePage> pageClass;
-        private PageMaker delegate = null;
+        private volatile PageMaker delegate = null;
+        private volatile Boolean bookmarkable = null;
+        private volatile int stamp;
+
+        /**
+         * The {@link System#nanoTime()} at which the stamp is checked next.
+         */
+        private volatile long nextCheck;
+
+        /**
+         * Set if there is a generated maker, but some of its arguments are
+         * only bound by tenants.
+         */
+        private volatile boolean tenantsOnly;
+
+        /**
+         * The generated maker of the first tenant if {@link #tenantsOnly} is
+         * set. The makers of the other tenants share its bindings.
+         */
+        private volatile GeneratedPageMaker tenantTemplate;
+
+        /**
+         * Returns the generated maker, unless some of its arguments are only
+         * bound by tenants. In that case the reflective maker is used, which
+         * reports the missing bindings when it is asked to create a page.
+         */
+        private PageMaker findGenerated() {
+            try {
+                return GeneratedPageMaker.find(injector, pageClass);
+            } catch (final ConfigurationException e) {
+                tenantsOnly = true;
+                return null;
+            }
+        }
+
+        /**
+         * Returns a maker that uses the providers of a tenant. Only the
+         * providers are looked up; everything else is shared with the maker of
+         * the application injector.
+         */
+        PageMaker forTenant(final Injector tenant) {
+            final PageMaker _delegate = getDelegate();
+
+            if (_delegate instanceof GeneratedPageMaker) {
+                return ((GeneratedPageMaker) _delegate).forInjector(tenant);
+            }
+
+            if (!tenantsOnly) {
+                return ((PageCreatorImpl) _delegate).forInjector(tenant);
+            }
+
+            final GeneratedPageMaker _template = tenantTemplate;
 
-        public PageCreatorProxy(final Injector injector, final Class<? extends IRequestablePage> pageClass) {
-            this.injector = injector;
+            if (_template != null) {
+                return _template.forInjector(tenant);
+            }
+
+            final GeneratedPageMaker generated = GeneratedPageMaker.find(tenant, pageClass);
+
+            tenantTemplate = generated;
+
+            return generated;
+        }
+
+        public PageCreatorProxy(final Class<? extends IRequestablePage> pageClass) {
             this.pageClass = pageClass;
         }
 
@@ -38,18 +134,199 @@ public class GuicierPageFactory implements IPageFactory {
             return _delegate.create(parameters);
         }
 
-        private synchronized PageMaker getDelegate() {
-            if (delegate != null) {
-                return delegate;
+        /**
+         * Returns the delegate. Only its creation is synchronized; once it
+         * exists, it is returned without taking the monitor. If
+         * {@link GuicierPageFactory#RELOAD_CHECK reload checks} are enabled,
+         * the delegate is rebuilt if the page class was redefined.
+         */
+        PageMaker getDelegate() {
+            final PageMaker _delegate = delegate;
+
+            if (_delegate == null) {
+                return update(reloadCheck ? stamp(pageClass) : 0);
+            }
+
+            if (!reloadCheck) {
+                return _delegate;
             }
 
-            return delegate = new PageCreatorImpl(injector, pageClass);
+            // computing the stamp reflects on all members of the class, so it
+            // is recomputed at most once per interval
+            final long now = System.nanoTime();
+
+            if (now - nextCheck < 0) {
+                return _delegate;
+            }
+
+            nextCheck = now + reloadCheckInterval;
+
+            final int _stamp = stamp(pageClass);
+
+            return _stamp == stamp ? _delegate : update(_stamp);
         }
 
+        private synchronized PageMaker update(final int _stamp) {
+            if (delegate != null && _stamp != stamp) {
+                LOG.info("{} was redefined, rebuilding its page maker", pageClass.getName());
+                delegate = null;
+                bookmarkable = null;
+                tenantsOnly = false;
+                tenantTemplate = null;
+                MembersInjection.invalidate(pageClass);
+
+                for (final TenantMakers makers : tenants.values()) {
+                    makers.remove(pageClass);
+                }
+            }
+
+            if (delegate == null) {
+                final PageMaker generated = findGenerated();
+
+                delegate = generated != null ? generated : new PageCreatorImpl(injector, pageClass);
+                stamp = _stamp;
+                nextCheck = System.nanoTime() + reloadCheckInterval;
+            }
+
+            return delegate;
+        }
+
+        boolean isBookmarkable() {
+            getDelegate(); // checks if the class was redefined
+
+            final Boolean _bookmarkable = bookmarkable;
+
+            if (_bookmarkable != null) {
+                return _bookmarkable.booleanValue();
+            }
+
+            final boolean bookmarkable_ = hasBookmarkableConstructor(pageClass);
+
+            bookmarkable = Boolean.valueOf(bookmarkable_);
+
+            return bookmarkable_;
+        }
+    }
+
+    /**
+     * The name of the optional {@code boolean} binding that enables the
+     * checks for redefined page classes. Disabled by default. The checks only
+     * help with agents that can change the constructors, fields or methods of
+     * a loaded class; a class redefined by plain HotSwap keeps its members,
+     * and a class loaded again by a new class loader gets a new maker anyway.
+     */
+    public static final String RELOAD_CHECK = "guicier.reloadCheck";
+
+    /**
+     * The name of the optional {@code long} binding that sets how many
+     * milliseconds pass before a page class is checked for redefinition again
+     * if {@link #RELOAD_CHECK reload checks} are enabled. Defaults to one
+     * second; {@code 0} checks before every page.
+     */
+    public static final String RELOAD_CHECK_INTERVAL = "guicier.reloadCheckInterval";
+
+    private static final Logger LOG = LoggerFactory.getLogger(GuicierPageFactory.class);
+    private static final String WICKET_PACKAGE = "org.apache.wicket.";
+
+    private static boolean hasBookmarkableConstructor(final Class<?> pageClass) {
+        final Constructor<?>[] constructors = pageClass.getConstructors();
+
+        for (final Constructor<?> constructor : constructors) {
+            if (constructor.isAnnotationPresent(Inject.class)
+                    || constructor.isAnnotationPresent(com.google.inject.Inject.class)) {
+                return true;
+            }
+
+            final Class<?>[] params = constructor.getParameterTypes();
+
+            switch (params.length) {
+            case 0:
+                return true;
+            case 1:
+                if (PageParameters.class.isAssignableFrom(params[0])) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
     }
 
+    /**
+     * Computes a stamp of the members of a class that matter to its maker: the
+     * constructors and the annotated fields and methods, including the ones
+     * inherited from application classes. The stamp changes if the class is
+     * redefined. Wicket's own classes are skipped, as they are not reloaded.
+     */
+    static int getStamp(final Class<?> type) {
+        int stamp = 1;
+
+        for (final Constructor<?> constructor : type.getDeclaredConstructors()) {
+            stamp = 31 * stamp + constructor.toGenericString().hashCode();
+            stamp = 31 * stamp + Arrays.deepHashCode(constructor.getParameterAnnotations());
+            stamp = 31 * stamp + Arrays.hashCode(constructor.getDeclaredAnnotations());
+        }
+
+        for (Class<?> cls = type; cls != null && !cls.getName().startsWith(WICKET_PACKAGE); cls = cls
+                .getSuperclass()) {
+            for (final Field field : cls.getDeclaredFields()) {
+                final Annotation[] annos = field.getDeclaredAnnotations();
+
+                if (annos.length > 0) {
+                    stamp = 31 * stamp + field.toGenericString().hashCode();
+                    stamp = 31 * stamp + Arrays.hashCode(annos);
+                }
+            }
+
+            for (final Method method : cls.getDeclaredMethods()) {
+                final Annotation[] annos = method.getDeclaredAnnotations();
+
+                if (annos.length > 0) {
+                    stamp = 31 * stamp + method.toGenericString().hashCode();
+                    stamp = 31 * stamp + Arrays.hashCode(annos);
+                }
+            }
+        }
+
+        return stamp;
+    }
+
+    /**
+     * Log progress every time another tenth of the pages is warmed up.
+     */
+    private static final int PROGRESS_STEPS = 10;
+
     private final Injector injector;
-    private final Map<Class<? extends IRequestablePage>, PageMaker> makerCache = new WeakHashMap<Class<? extends IRequestablePage>, PageMaker>();
+
+    /**
+     * If set, the factory checks if page classes have been redefined before
+     * using their makers.
+     */
+    private boolean reloadCheck;
+
+    /**
+     * The nanoseconds between two checks for redefinition of a page class.
+     */
+    private long reloadCheckInterval = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * The makers, stored with the page classes. Unlike a map keyed by class,
+     * reading a {@link ClassValue} does not take any lock, and the makers do
+     * not keep the page classes from being unloaded.
+     */
+    private final ClassValue<PageCreatorProxy> makerCache = new ClassValue<PageCreatorProxy>() {
+        @Override
+        protected PageCreatorProxy computeValue(final Class<?> type) {
+            return new PageCreatorProxy(type.asSubclass(IRequestablePage.class));
+        }
+    };
+
+    /**
+     * The makers of the tenants. Tenant injectors are expected to live as
+     * long as the application, so they are never removed; the makers refer to
+     * their injectors, so weak keys would not let them go either.
+     */
+    private final ConcurrentMap<Injector, TenantMakers> tenants = new ConcurrentHashMap<Injector, TenantMakers>();
 
     /**
      * Create a new factory.
@@ -66,24 +343,118 @@ public class GuicierPageFactory implements IPageFactory {
         this.injector = injector;
     }
 
-    private synchronized <C extends IRequestablePage> PageMaker getCreator(final Class<C> pageClass) {
-        final PageMaker creator = makerCache.get(pageClass);
+    /**
+     * Computes the stamp used to detect redefined page classes.
+     * 
+     * @param pageClass
+     *            the page class
+     * @return the stamp
+     * @see #getStamp(Class)
+     */
+    int stamp(final Class<?> pageClass) {
+        return getStamp(pageClass);
+    }
+
+    /**
+     * Enables the checks for redefined page classes.
+     * 
+     * @param reloadCheck
+     *            {@code true} to check if page classes have been redefined
+     * @see #RELOAD_CHECK
+     */
+    @com.google.inject.Inject(optional = true)
+    void setReloadCheck(@Named(RELOAD_CHECK) final boolean reloadCheck) {
+        this.reloadCheck = reloadCheck;
+    }
+
+    /**
+     * Replaces the default interval of the checks for redefined page classes.
+     * 
+     * @param millis
+     *            the milliseconds between two checks of the same page class
+     * @see #RELOAD_CHECK_INTERVAL
+     */
+    @com.google.inject.Inject(optional = true)
+    void setReloadCheckInterval(@Named(RELOAD_CHECK_INTERVAL) final long millis) {
+        this.reloadCheckInterval = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private <C extends IRequestablePage> PageCreatorProxy getCreator(final Class<C> pageClass) {
+        return makerCache.get(pageClass);
+    }
+
+    /**
+     * Returns the maker for a page class, creating it if necessary.
+     * 
+     * @param pageClass
+     *            the page class
+     * @return the maker
+     */
+    PageMaker getMaker(final Class<? extends IRequestablePage> pageClass) {
+        return getCreator(pageClass).getDelegate();
+    }
+
+    /**
+     * Returns the maker for a page class that uses the providers of a tenant.
+     * 
+     * @param tenant
+     *            the child injector of the tenant
+     * @param pageClass
+     *            the page class
+     * @return the maker
+     */
+    PageMaker getMaker(final Injector tenant, final Class<? extends IRequestablePage> pageClass) {
+        if (tenant == injector || reloadCheck) {
+            final PageMaker maker = getMaker(pageClass); // checks if the class was redefined
+
+            if (tenant == injector) {
+                return maker;
+            }
+        }
+
+        TenantMakers makers = tenants.get(tenant);
+
+        if (makers == null) {
+            final TenantMakers _makers = new TenantMakers(tenant);
+
+            makers = tenants.putIfAbsent(tenant, _makers);
 
-        if (creator != null) {
-            return creator;
+            if (makers == null) {
+                makers = _makers;
+            }
         }
 
-        final PageMaker _creator = new PageCreatorProxy(injector, pageClass);
+        return makers.get(pageClass);
+    }
 
-        makerCache.put(pageClass, _creator);
+    /**
+     * Invalidates the maker of a page class, for instance after the class has
+     * been redefined. Makers of other classes are not affected. Classes loaded
+     * again by a new class loader do not have to be invalidated, as they get
+     * new makers anyway.
+     * 
+     * @param pageClass
+     *            the page class
+     */
+    public void invalidate(final Class<? extends IRequestablePage> pageClass) {
+        makerCache.remove(pageClass);
+        MembersInjection.invalidate(pageClass);
 
-        return _creator;
+        for (final TenantMakers makers : tenants.values()) {
+            makers.remove(pageClass);
+        }
     }
 
+    /**
+     * Pages are bookmarkable if they have an {@code @Inject} annotated
+     * constructor, a default constructor or a constructor that only takes the
+     * {@link PageParameters}. The result is cached with the maker.
+     * 
+     * @see IPageFactory#isBookmarkable(Class)
+     */
     @Override
-    public <C extends IRequestablePage> boolean isBookmarkable(final Class<C> arg0) {
-        // TODO Auto-generated method stub
-        return false;
+    public <C extends IRequestablePage> boolean isBookmarkable(final Class<C> pageClass) {
+        return getCreator(pageClass).isBookmarkable();
     }
 
     @Override
@@ -98,4 +469,110 @@ public class GuicierPageFactory implements IPageFactory {
 
         return creator.create(parameters);
     }
+
+    /**
+     * Creates a page for a tenant. The page is created just like
+     * {@link #newPage(Class, PageParameters)} would, but the arguments and
+     * members of the page are injected using the tenant's injector. The
+     * constructors and the dispatch index of the page class are shared by all
+     * tenants.
+     * 
+     * @param tenant
+     *            the injector of the tenant; a child of the injector of this
+     *            factory, which lives as long as the application, as its
+     *            makers are kept by this factory
+     * @param pageClass
+     *            the page class
+     * @param parameters
+     *            the parameters
+     * @param <C>
+     *            the page type
+     * @return the new page
+     * @see TenantResolver
+     */
+    public <C extends IRequestablePage> IRequestablePage newPage(final Injector tenant, final Class<C> pageClass,
+            final PageParameters parameters) {
+        final PageMaker creator = getMaker(tenant, pageClass);
+
+        return creator.create(parameters);
+    }
+
+    /**
+     * Builds the makers for the given pages ahead of time, so the first request
+     * for each page does not have to pay for it. Pages are loaded and analyzed
+     * in parallel.
+     * 
+     * @param pageClassNames
+     *            the names of the page classes
+     * @param loader
+     *            the class loader used to load the pages
+     * @param threads
+     *            the maximum number of threads to be used
+     * @param validate
+     *            also report pages whose constructor arguments are not bound
+     *            by the injector of this factory; turned off in the
+     *            multi-tenant mode, where they may be bound by the tenants
+     * @return the number of pages for which no maker could be built
+     */
+    int warmUp(final Collection<String> pageClassNames, final ClassLoader loader, final int threads,
+            final boolean validate) {
+        final int total = pageClassNames.size();
+
+        if (total == 0) {
+            return 0;
+        }
+
+        final long start = System.currentTimeMillis();
+        final int step = Math.max(1, total / PROGRESS_STEPS);
+        final AtomicInteger done = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, total)));
+        final List<Future<?>> futures = new ArrayList<Future<?>>(total);
+
+        try {
+            for (final String name : pageClassNames) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        final Class<?> cls = Class.forName(name, true, loader);
+
+                        final PageMaker maker = getMaker(cls.asSubclass(IRequestablePage.class));
+
+                        if (validate && maker instanceof PageCreatorImpl) {
+                            ((PageCreatorImpl) maker).validate();
+                        }
+
+                        final int _done = done.incrementAndGet();
+
+                        if (_done % step == 0) {
+                            LOG.info("warmed up {}/{} page makers", Integer.valueOf(_done), Integer.valueOf(total));
+                        }
+
+                        return null;
+                    }
+                }));
+            }
+
+            int failed = 0;
+            int idx = 0;
+
+            for (final String name : pageClassNames) {
+                try {
+                    futures.get(idx++).get();
+                } catch (final ExecutionException e) {
+                    failed++;
+                    LOG.warn("cannot warm up page maker for " + name, e.getCause());
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted while warming up page makers", e);
+                }
+            }
+
+            LOG.info("warmed up {} page makers in {}ms, {} failed", new Object[] { Integer.valueOf(total - failed),
+                    Long.valueOf(System.currentTimeMillis() - start), Integer.valueOf(failed) });
+
+            return failed;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
@@ -5,12 +5,6 @@
 
 package com.jolira.wicket.guicier;
 
-import java.lang.reflect.Constructor;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-
-import javax.inject.Inject;
-
 import org.apache.wicket.IPageFactory;
 import org.apache.wicket.request.component.IRequestablePage;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
@@ -23,58 +17,25 @@ import com.google.inject.Injector;
  * @since 1.0
  */
 abstract class GuicierPageFactoryProxy implements IPageFactory {
-    private final ConcurrentMap<String, Boolean> pageToBookmarkableCache = new ConcurrentHashMap<String, Boolean>();
-
-    private <C> boolean doIsBookmarkable(final Class<C> pageClass) {
-        final Constructor<?>[] constructors = pageClass.getConstructors();
-
-        for (final Constructor<?> constructor : constructors) {
-            final Inject i1 = constructor.getAnnotation(Inject.class);
-
-            if (i1 != null) {
-                return true;
-            }
-
-            final com.google.inject.Inject i2 = constructor.getAnnotation(com.google.inject.Inject.class);
-
-            if (i2 != null) {
-                return true;
-            }
-
-            final Class<?>[] params = constructor.getParameterTypes();
-
-            switch (params.length) {
-            case 0:
-                return true;
-            case 1:
-                if (PageParameters.class.isAssignableFrom(params[0])) {
-                    return true;
-                }
-            }
-        }
+    abstract Injector getInjector();
 
-        return false;
+    /**
+     * @return the injector used for the current request; a child of
+     *         {@link #getInjector()} in the multi-tenant mode
+     */
+    Injector getRequestInjector() {
+        return getInjector();
     }
 
-    abstract Injector getInjector();
-
     /**
      * @see IPageFactory#isBookmarkable(Class)
      */
     @Override
     public <C extends IRequestablePage> boolean isBookmarkable(final Class<C> pageClass) {
-        final String className = pageClass.getName();
-        final Boolean bookmarkable = pageToBookmarkableCache.get(className);
-
-        if (bookmarkable != null) {
-            return bookmarkable.booleanValue();
-        }
-
-        final boolean _bookmarkable = doIsBookmarkable(pageClass);
-        final Boolean bookmarkable_ = Boolean.valueOf(_bookmarkable);
-        pageToBookmarkableCache.put(className, bookmarkable_);
+        final Injector i = getInjector();
+        final IPageFactory factory = i.getInstance(GuicierPageFactory.class);
 
-        return _bookmarkable;
+        return factory.isBookmarkable(pageClass);
     }
 
     /**
@@ -92,8 +53,8 @@ abstract class GuicierPageFactoryProxy implements IPageFactory {
     public <C extends IRequestablePage> IRequestablePage newPage(final Class<C> pageClass,
             final PageParameters parameters) {
         final Injector i = getInjector();
-        final IPageFactory factory = i.getInstance(GuicierPageFactory.class);
+        final GuicierPageFactory factory = i.getInstance(GuicierPageFactory.class);
 
-        return factory.newPage(pageClass, parameters);
+        return factory.newPage(getRequestInjector(), pageClass, parameters);
     }
 }
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+import javax.inject.Singleton;
+
+import org.apache.wicket.Application;
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.request.resource.IResource;
+import org.apache.wicket.request.resource.ResourceReference;
+
+import com.google.inject.Injector;
+
+/**
+ * A reference to a resource that is created using its {@code @Inject}
+ * annotated constructor, the way pages are created by the
+ * {@link GuicierPageFactory}: {@link Parameter} annotated arguments are
+ * decoded from the parameters of the request and all other arguments are
+ * provided by Guice. The constructor is analyzed once.
+ * <p>
+ * By default, a new resource is created for every request. Resource classes
+ * annotated using {@link Singleton} are created once and serve all requests,
+ * so they have to be thread-safe and their constructor may only take Guice
+ * provided arguments.
+ *
+ * @author jfk
+ * @since 2.5
+ * @param <R>
+ *            the resource type
+ * @see GuicierWebApplication#mountResource(String, Class)
+ */
+public class GuicierResourceReference<R extends IResource> extends ResourceReference {
+    /**
+     * Creates a resource for each request and lets it respond.
+     */
+    private final class PerRequest implements IResource {
+        private static final long serialVersionUID = 3166430383394315302L;
+
+        @Override
+        public void respond(final Attributes attributes) {
+            final R resource = getConstructor().create(attributes.getParameters());
+
+            resource.respond(attributes);
+        }
+    }
+
+    private static final long serialVersionUID = -1487932263806282011L;
+
+    private static boolean isSingleton(final Class<?> type) {
+        return type.isAnnotationPresent(Singleton.class)
+                || type.isAnnotationPresent(com.google.inject.Singleton.class);
+    }
+
+    private final Class<R> type;
+    private final boolean singleton;
+    private final IResource perRequest = new PerRequest();
+    private transient volatile ResourceConstructor<R> constructor;
+    private transient volatile R instance;
+
+    /**
+     * Create a new reference.
+     *
+     * @param injector
+     *            the injector providing the arguments of the resources
+     * @param type
+     *            the resource class
+     */
+    public GuicierResourceReference(final Injector injector, final Class<R> type) {
+        super(type, type.getSimpleName());
+
+        this.type = type;
+        this.constructor = new ResourceConstructor<R>(injector, injector.getInstance(Guicier.class), type);
+        this.singleton = isSingleton(type);
+
+        if (singleton && !constructor.isRequestIndependent()) {
+            throw new WicketRuntimeException("the constructor of singleton resource " + type
+                    + " may only take Guice provided arguments");
+        }
+    }
+
+    /**
+     * Returns the plan, which is rebuilt using the injector of the
+     * application if this reference was deserialized.
+     */
+    ResourceConstructor<R> getConstructor() {
+        final ResourceConstructor<R> _constructor = constructor;
+
+        if (_constructor != null) {
+            return _constructor;
+        }
+
+        final GuicierWebApplication application = (GuicierWebApplication) Application.get();
+        final Injector injector = application.getInjector();
+        final ResourceConstructor<R> constructor_ = new ResourceConstructor<R>(injector,
+                injector.getInstance(Guicier.class), type);
+
+        constructor = constructor_;
+
+        return constructor_;
+    }
+
+    /**
+     * @return the single instance of a {@link Singleton} resource, or a
+     *         resource that creates a new instance for every request
+     */
+    @Override
+    public IResource getResource() {
+        if (!singleton) {
+            return perRequest;
+        }
+
+        final R _instance = instance;
+
+        if (_instance != null) {
+            return _instance;
+        }
+
+        synchronized (this) {
+            if (instance == null) {
+                instance = getConstructor().create(null);
+            }
+
+            return instance;
+        }
+    }
+}
@@ -5,7 +5,10 @@
 
 package com.jolira.wicket.guicier;
 
+import java.util.Collection;
+
 import javax.inject.Inject;
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.wicket.Component;
 import org.apache.wicket.IPageFactory;
@@ -14,10 +17,15 @@ import org.apache.wicket.Session;
 import org.apache.wicket.application.ComponentInstantiationListenerCollection;
 import org.apache.wicket.application.IComponentInstantiationListener;
 import org.apache.wicket.protocol.http.WebApplication;
+import org.apache.wicket.request.IExceptionMapper;
+import org.apache.wicket.request.IRequestHandler;
 import org.apache.wicket.request.Request;
 import org.apache.wicket.request.Response;
 import org.apache.wicket.request.cycle.RequestCycle;
 import org.apache.wicket.request.cycle.RequestCycleContext;
+import org.apache.wicket.request.http.handler.ErrorCodeRequestHandler;
+import org.apache.wicket.request.resource.IResource;
+import org.apache.wicket.util.IProvider;
 
 import com.google.inject.Injector;
 
@@ -30,6 +38,7 @@ import com.google.inject.Injector;
  */
 public abstract class GuicierWebApplication extends WebApplication {
     private final Injector injector;
+    private TenantResolver tenantResolver;
 
     /**
      * Create a new application.
@@ -44,16 +53,104 @@ public abstract class GuicierWebApplication extends WebApplication {
         this.injector = injector;
     }
 
+    /**
+     * Answers requests rejected by a page with the
+     * {@link #getRejectedPageStatus() rejected page status}, and requests
+     * with invalid parameters using the
+     * {@link #newInvalidParametersHandler(InvalidParametersException)
+     * invalid parameters handler}. All other exceptions are mapped by the
+     * default mapper.
+     * 
+     * @see WebApplication#getExceptionMapperProvider()
+     */
+    @Override
+    public IProvider<IExceptionMapper> getExceptionMapperProvider() {
+        final IProvider<IExceptionMapper> provider = super.getExceptionMapperProvider();
+
+        return new IProvider<IExceptionMapper>() {
+            @Override
+            public IExceptionMapper get() {
+                final IExceptionMapper mapper = provider.get();
+
+                return new IExceptionMapper() {
+                    @Override
+                    public IRequestHandler map(final Exception e) {
+                        final PageRejectedException rejection = PageRejectedException.find(e);
+
+                        if (rejection != null) {
+                            return new ErrorCodeRequestHandler(getRejectedPageStatus());
+                        }
+
+                        final InvalidParametersException invalid = InvalidParametersException.find(e);
+
+                        if (invalid != null) {
+                            return newInvalidParametersHandler(invalid);
+                        }
+
+                        return mapper.map(e);
+                    }
+                };
+            }
+        };
+    }
+
     /**
      * @return the injector used by the application
      */
-    protected synchronized Injector getInjector() {
+    protected Injector getInjector() {
         return injector;
     }
 
+    /**
+     * @return the injector of the tenant the current request belongs to, or
+     *         the {@link #getInjector() injector of the application} if there
+     *         is no {@link TenantResolver} or it does not select a tenant
+     */
+    protected Injector getRequestInjector() {
+        final TenantResolver resolver = tenantResolver;
+        final Injector tenant = resolver != null ? resolver.getInjector() : null;
+
+        return tenant != null ? tenant : getInjector();
+    }
+
+    /**
+     * Mounts a resource that is created using its {@code @Inject} annotated
+     * constructor. Its arguments are always provided by the
+     * {@link #getInjector() injector of the application}, even in the
+     * multi-tenant mode, as the resource is mounted once for all tenants.
+     * 
+     * @param path
+     *            the path of the resource
+     * @param resourceClass
+     *            the resource class
+     * @param <R>
+     *            the resource type
+     * @see GuicierResourceReference
+     */
+    public <R extends IResource> void mountResource(final String path, final Class<R> resourceClass) {
+        mountResource(path, new GuicierResourceReference<R>(getInjector(), resourceClass));
+    }
+
+    /**
+     * Enables the multi-tenant mode. Called by Guice if a
+     * {@link TenantResolver} is bound.
+     * 
+     * @param tenantResolver
+     *            the resolver
+     */
+    @com.google.inject.Inject(optional = true)
+    public void setTenantResolver(final TenantResolver tenantResolver) {
+        this.tenantResolver = tenantResolver;
+    }
+
     /**
      * Installs the {@link GuicierPageFactory} and a customized
-     * {@link IComponentInstantiationListener}.
+     * {@link IComponentInstantiationListener}. The listener only injects the
+     * members of components whose class has {@code @Inject} fields or
+     * methods; for all other components it is a single cached lookup. In the
+     * multi-tenant mode the members are injected by the tenant's injector.
+     * Components created by a {@link GuicierComponentFactory} are injected by
+     * their cached {@link ComponentMaker}.
      * 
      * @see WebApplication#init()
      */
@@ -66,9 +163,14 @@ public abstract class GuicierWebApplication extends WebApplication {
         listeners.add(new IComponentInstantiationListener() {
             @Override
             public void onInstantiation(final Component component) {
-                final Injector i = GuicierWebApplication.this.getInjector();
+                final Class<? extends Component> type = component.getClass();
 
-                i.injectMembers(component);
+                if (!MembersInjection.hasInjectionPoints(type) || ComponentConstructor.injectMembers(component)) {
+                    return;
+                }
+
+                // looked up per component, so subclasses may replace the injector
+                getRequestInjector().injectMembers(component);
             }
         });
 
@@ -78,6 +180,74 @@ public abstract class GuicierWebApplication extends WebApplication {
                 return new GuicierWebRequestCycle(context);
             }
         });
+
+        warmUp();
+    }
+
+    /**
+     * @return the HTTP status sent if no constructor of the requested page can
+     *         be used with the parameters of the request; 404 by default
+     * @see PageRejectedException
+     */
+    protected int getRejectedPageStatus() {
+        return HttpServletResponse.SC_NOT_FOUND;
+    }
+
+    /**
+     * Creates the handler answering a request whose parameters were rejected
+     * by their verifiers or converters. The rejected values are counted by
+     * the {@link Guicier} of the application, see
+     * {@link Guicier#getInvalidParameterCounts()}.
+     * 
+     * @param e
+     *            the exception, which lists the rejected values
+     * @return the handler; sends {@link #getInvalidParametersStatus()} by
+     *         default, without an error page
+     */
+    protected IRequestHandler newInvalidParametersHandler(final InvalidParametersException e) {
+        return new ErrorCodeRequestHandler(getInvalidParametersStatus());
+    }
+
+    /**
+     * @return the HTTP status sent if some parameters of a request were
+     *         rejected by their verifiers or converters; 400 by default
+     * @see #newInvalidParametersHandler(InvalidParametersException)
+     */
+    protected int getInvalidParametersStatus() {
+        return HttpServletResponse.SC_BAD_REQUEST;
+    }
+
+    /**
+     * @return the maximum number of threads used to build the page makers at
+     *         startup; {@code 0} disables the warm-up.
+     */
+    protected int getWarmUpThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Builds the page makers for all pages listed in the index written by the
+     * {@link PageMakerProcessor}, so the first request to each page does not
+     * have to. Called from {@link #init()}, so the application is not ready
+     * before all makers are built. Failures are logged and do not prevent the
+     * application from starting; the affected pages fail again when they are
+     * requested.
+     * 
+     * @return the number of pages for which the maker could not be built
+     */
+    protected int warmUp() {
+        final int threads = getWarmUpThreads();
+
+        if (threads <= 0) {
+            return 0;
+        }
+
+        final ClassLoader loader = getClass().getClassLoader();
+        final Collection<String> pages = PageIndex.read(loader);
+        final Injector i = getInjector();
+        final GuicierPageFactory factory = i.getInstance(GuicierPageFactory.class);
+
+        return factory.warmUp(pages, loader, threads, tenantResolver == null);
     }
 
     @Override
@@ -87,6 +257,11 @@ public abstract class GuicierWebApplication extends WebApplication {
             Injector getInjector() {
                 return GuicierWebApplication.this.getInjector();
             }
+
+            @Override
+            Injector getRequestInjector() {
+                return GuicierWebApplication.this.getRequestInjector();
+            }
         };
     }
 
@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+/**
+ * Thrown if some of the values passed to a page, component or resource do not
+ * match their verifier or cannot be converted. All rejected values of a
+ * request are reported by one exception, which carries no stack trace, as
+ * malformed requests are usually sent by bots and scanners.
+ * <p>
+ * {@link GuicierWebApplication} answers requests failing with this exception
+ * using an HTTP error code rather than an error page.
+ *
+ * @author jfk
+ * @since 2.5
+ * @see GuicierWebApplication#newInvalidParametersHandler(InvalidParametersException)
+ */
+public final class InvalidParametersException extends IllegalArgumentException {
+    private static final long serialVersionUID = 6042374178946052396L;
+
+    /**
+     * Finds an {@link InvalidParametersException} in the causes of an
+     * exception.
+     *
+     * @param e
+     *            the exception
+     * @return the exception or {@code null} if there is none
+     */
+    public static InvalidParametersException find(final Throwable e) {
+        return Causes.find(e, InvalidParametersException.class);
+    }
+
+    private final Class<?> target;
+    private final ParameterErrors errors;
+
+    InvalidParametersException(final Class<?> target, final ParameterErrors errors) {
+        this.target = target;
+        this.errors = errors;
+    }
+
+    /**
+     * The exception is only thrown for malformed requests, so it never has a
+     * stack trace.
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+    /**
+     * @return the rejected values
+     */
+    public ParameterErrors getErrors() {
+        return errors;
+    }
+
+    /**
+     * The message is only built if it is asked for.
+     */
+    @Override
+    public String getMessage() {
+        return "invalid parameters for " + target.getName() + ": " + errors;
+    }
+
+    /**
+     * @return the class of the page, component or resource that rejected the
+     *         values
+     */
+    public Class<?> getTarget() {
+        return target;
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+import java.io.Serializable;
+import java.lang.reflect.Type;
+
+import org.apache.wicket.Application;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+
+import com.google.inject.Provider;
+
+/**
+ * Passed to {@link Parameter} annotated arguments of type {@link Provider} or
+ * {@link javax.inject.Provider}. The values have already been verified when
+ * the page was created; they are converted the first time {@link #get()} is
+ * called, and the result is kept.
+ * <p>
+ * Pages are serialized. A provider that has not been used yet is serialized
+ * with its verified values, which are not converted until {@link #get()} is
+ * called; after deserialization the converter is looked up using the injector
+ * of the {@link GuicierWebApplication}.
+ *
+ * @author jfk
+ * @since 2.5
+ */
+final class LazyParameter implements Provider<Object>, Serializable {
+    private static final long serialVersionUID = 2916128393584287154L;
+
+    private transient ParameterBinding binding;
+    private final Parameter param;
+    private final Type type;
+    private PageParameters verified;
+    private boolean converted;
+    private Object value;
+
+    /**
+     * @param binding
+     *            converts the value
+     * @param param
+     *            the parameter, used to convert the value after
+     *            deserialization
+     * @param type
+     *            the type of the value; must be serializable
+     * @param verified
+     *            the verified values of the parameter
+     */
+    LazyParameter(final ParameterBinding binding, final Parameter param, final Type type,
+            final PageParameters verified) {
+        this.binding = binding;
+        this.param = param;
+        this.type = type;
+        this.verified = verified;
+    }
+
+    @Override
+    public synchronized Object get() {
+        if (converted) {
+            return value;
+        }
+
+        if (binding == null) {
+            final GuicierWebApplication application = (GuicierWebApplication) Application.get();
+            final Guicier guicier = application.getInjector().getInstance(Guicier.class);
+
+            binding = ParameterBinding.getDeferred(guicier, param, type);
+        }
+
+        value = binding.get(verified, null);
+        converted = true;
+        binding = null;
+        verified = null;
+
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "LazyParameter[" + (converted ? value : param) + "]";
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+import com.google.inject.ConfigurationException;
+import com.google.inject.Injector;
+import com.google.inject.MembersInjector;
+import com.google.inject.spi.InjectionPoint;
+
+/**
+ * Injects the members of instances of one class. The {@link MembersInjector}
+ * is looked up once. Member injection is skipped entirely for classes without
+ * any {@code @Inject} fields or methods.
+ * <p>
+ * Note that skipping also skips any {@code InjectionListener}s registered for
+ * the class using a {@code TypeListener}.
+ *
+ * @author jfk
+ * @since 2.5
+ */
+final class MembersInjection {
+    private static final ClassValue<Boolean> INJECTABLE = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(final Class<?> type) {
+            try {
+                return Boolean.valueOf(!InjectionPoint.forInstanceMethodsAndFields(type).isEmpty());
+            } catch (final ConfigurationException e) {
+                return Boolean.TRUE; // let Guice report the problem
+            }
+        }
+    };
+
+    /**
+     * Checks if a class has any {@code @Inject} fields or methods, including
+     * the ones it inherits. The result is cached per class.
+     *
+     * @param type
+     *            the class
+     * @return {@code true} if instances need member injection
+     */
+    static boolean hasInjectionPoints(final Class<?> type) {
+        return INJECTABLE.get(type).booleanValue();
+    }
+
+    /**
+     * Forgets the cached result of {@link #hasInjectionPoints(Class)}, for
+     * instance after the class has been redefined.
+     *
+     * @param type
+     *            the class
+     */
+    static void invalidate(final Class<?> type) {
+        INJECTABLE.remove(type);
+    }
+
+    private final MembersInjector<Object> membersInjector;
+
+    MembersInjection(final Injector injector, final Class<?> type) {
+        if (!hasInjectionPoints(type)) {
+            membersInjector = null;
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        final MembersInjector<Object> _membersInjector = (MembersInjector<Object>) injector.getMembersInjector(type);
+
+        membersInjector = _membersInjector;
+    }
+
+    /**
+     * @return {@code true} if member injection is skipped because the class
+     *         has no injection points
+     */
+    boolean isSkipped() {
+        return membersInjector == null;
+    }
+
+    /**
+     * Injects the members of an instance.
+     *
+     * @param instance
+     *            the instance
+     */
+    void injectMembers(final Object instance) {
+        if (membersInjector == null) {
+            return;
+        }
+
+        membersInjector.injectMembers(instance);
+    }
+}
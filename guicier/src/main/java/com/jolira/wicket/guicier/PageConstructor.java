@@ -1,10 +1,14 @@
 package com.jolira.wicket.guicier;
 
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Type;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.concurrent.Future;
 
 import javax.inject.Inject;
 
@@ -18,6 +22,30 @@ import com.google.inject.Key;
 import com.google.inject.Provider;
 
 final class PageConstructor {
+    /**
+     * The providers of the Guice provided arguments, looked up in one
+     * injector.
+     */
+    static final class Arguments {
+        final Provider<?>[] providers;
+        final ConcurrentProviders concurrentProviders;
+        final int[] concurrent;
+        final boolean[] isConcurrent;
+
+        Arguments(final Provider<?>[] providers, final ConcurrentProviders concurrentProviders, final int[] concurrent) {
+            this.providers = providers;
+            this.concurrentProviders = concurrentProviders;
+            this.concurrent = concurrent;
+            isConcurrent = new boolean[providers.length];
+
+            if (concurrent != null) {
+                for (final int idx : concurrent) {
+                    isConcurrent[idx] = true;
+                }
+            }
+        }
+    }
+
     private static boolean contains(final PageParameters parameters, final String name) {
         if (parameters == null) {
             return false;
@@ -28,15 +56,21 @@ final class PageConstructor {
         return !values.isEmpty();
     }
 
-    static PageConstructor get(final Injector injector, final Constructor<Page> constructor) {
+    static PageConstructor get(final Guicier gpp, final Constructor<Page> constructor,
+            final ParameterFields parameterFields) {
         final Annotation[][] paramAnnotations = constructor.getParameterAnnotations();
         int paramCount = 0;
         boolean isParametersOnly = false;
         final Type[] genericParamsTypes = constructor.getGenericParameterTypes();
         final Class<?>[] paramTypes = constructor.getParameterTypes();
         final Parameter[] params = new Parameter[genericParamsTypes.length];
-        final Provider<?>[] providers = new Provider<?>[genericParamsTypes.length];
+        final Key<?>[] keys = new Key<?>[genericParamsTypes.length];
+        final ParameterBinding[] bindings = new ParameterBinding[genericParamsTypes.length];
         final boolean injectAnnotationPresent = isAnnotationPresent(constructor);
+        final boolean isAllConcurrent = constructor.isAnnotationPresent(Concurrent.class)
+                || constructor.getDeclaringClass().isAnnotationPresent(Concurrent.class);
+        final boolean[] wantsConcurrent = new boolean[genericParamsTypes.length];
+        boolean needsCleansed = false;
 
         for (int idx = 0; idx < genericParamsTypes.length; idx++) {
             final Annotation[] annos = paramAnnotations[idx];
@@ -46,29 +80,78 @@ final class PageConstructor {
             if (parameter != null || isPageParameters) {
                 paramCount++;
                 params[idx] = parameter;
+                needsCleansed |= idx > 0 && isPageParameters;
+
+                if (!isPageParameters) {
+                    bindings[idx] = new ParameterBinding(gpp, parameter, paramTypes[idx], genericParamsTypes[idx]);
+                }
+
                 isParametersOnly = paramCount == 1 && isPageParameters && !injectAnnotationPresent;
             } else {
                 if (!injectAnnotationPresent) {
                     return null;
                 }
 
-                final Annotation anno = getNonParamAnnotation(annos);
-                final Type type = genericParamsTypes[idx];
-                final Key<?> key = anno != null ? Key.get(type, anno) : Key.get(type);
+                final Key<?> key = getKey(genericParamsTypes[idx], annos);
 
-                providers[idx] = injector.getProvider(key);
+                keys[idx] = key;
+                wantsConcurrent[idx] = isAllConcurrent || isConcurrent(annos);
             }
         }
 
-        final Guicier gpp = injector.getInstance(Guicier.class);
+        final MethodHandle instantiator = getInstantiator(constructor, Page.class);
 
-        return new PageConstructor(gpp, paramCount == 0, injectAnnotationPresent, params, providers, isParametersOnly,
-                constructor, injector, paramTypes);
+        return new PageConstructor(gpp, constructor.getDeclaringClass(), paramCount == 0, injectAnnotationPresent,
+                params, bindings, keys, wantsConcurrent, isParametersOnly, needsCleansed, instantiator, parameterFields,
+                paramTypes);
+    }
+
+    /**
+     * Compiles the constructor into a method handle that takes the arguments
+     * as an {@code Object[]}. Unboxing of primitive arguments is handled by the
+     * handle, so it can be reused for every request.
+     * 
+     * @param constructor
+     *            the constructor
+     * @param type
+     *            the type returned by the handle
+     * @return the handle
+     */
+    static MethodHandle getInstantiator(final Constructor<?> constructor, final Class<?> type) {
+        constructor.setAccessible(true);
+
+        final MethodHandle handle;
+
+        try {
+            handle = MethodHandles.lookup().unreflectConstructor(constructor);
+        } catch (final IllegalAccessException e) {
+            throw new WicketRuntimeException(e);
+        }
+
+        final int paramCount = constructor.getParameterTypes().length;
+        final MethodHandle spreader = handle.asFixedArity().asSpreader(Object[].class, paramCount);
+
+        return spreader.asType(MethodType.methodType(type, Object[].class));
+    }
+
+    /**
+     * Returns the key for an argument that is provided by Guice.
+     * 
+     * @param type
+     *            the generic type of the argument
+     * @param annos
+     *            the annotations of the argument
+     * @return the key
+     */
+    static Key<?> getKey(final Type type, final Annotation[] annos) {
+        final Annotation anno = getNonParamAnnotation(annos);
+
+        return anno != null ? Key.get(type, anno) : Key.get(type);
     }
 
     private static Annotation getNonParamAnnotation(final Annotation[] annos) {
         for (final Annotation anno : annos) {
-            if (!(anno instanceof Parameter)) {
+            if (!(anno instanceof Parameter) && !(anno instanceof Concurrent)) {
                 return anno;
             }
         }
@@ -76,7 +159,7 @@ final class PageConstructor {
         return null;
     }
 
-    private static Parameter getParameterAnnotation(final Annotation[] annos) {
+    static Parameter getParameterAnnotation(final Annotation[] annos) {
         for (final Annotation anno : annos) {
             if (anno instanceof Parameter) {
                 return (Parameter) anno;
@@ -86,6 +169,16 @@ final class PageConstructor {
         return null;
     }
 
+    private static boolean isConcurrent(final Annotation[] annos) {
+        for (final Annotation anno : annos) {
+            if (anno instanceof Concurrent) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     private static boolean isAnnotationPresent(final Constructor<Page> constructor) {
         return constructor.isAnnotationPresent(Inject.class)
                 || constructor.isAnnotationPresent(com.google.inject.Inject.class);
@@ -97,29 +190,51 @@ final class PageConstructor {
 
     private final Parameter[] params;
 
-    private final Provider<?>[] providers;
+    /**
+     * The converters and verifiers of the {@link Parameter} annotated
+     * arguments, {@code null} for all other arguments.
+     */
+    private final ParameterBinding[] bindings;
+
+    private final Key<?>[] keys;
+
+    private final boolean[] wantsConcurrent;
 
     private final boolean isParametersOnly;
 
-    private final Constructor<Page> constructor;
+    /**
+     * Only constructors that take {@link PageParameters} after their first
+     * argument receive the cleansed parameters, so they are not built for any
+     * other constructor.
+     */
+    private final boolean needsCleansed;
 
-    private final Injector injector;
+    private final MethodHandle instantiator;
+
+    private final ParameterFields parameterFields;
 
     private final Class<?>[] parameterTypes;
 
     private final Guicier gpp;
 
-    private PageConstructor(final Guicier gpp, final boolean isDefault, final boolean isInjected,
-            final Parameter[] params, final Provider<?>[] providers, final boolean isParametersOnly,
-            final Constructor<Page> constructor, final Injector injector, final Class<?>[] parameterTypes) {
+    private final Class<?> pageClass;
+
+    private PageConstructor(final Guicier gpp, final Class<?> pageClass, final boolean isDefault,
+            final boolean isInjected, final Parameter[] params, final ParameterBinding[] bindings, final Key<?>[] keys,
+            final boolean[] wantsConcurrent, final boolean isParametersOnly, final boolean needsCleansed,
+            final MethodHandle instantiator, final ParameterFields parameterFields, final Class<?>[] parameterTypes) {
         this.gpp = gpp;
+        this.pageClass = pageClass;
         this.params = params;
-        this.providers = providers;
+        this.bindings = bindings;
+        this.keys = keys;
+        this.wantsConcurrent = wantsConcurrent;
         this.isParametersOnly = isParametersOnly;
+        this.needsCleansed = needsCleansed;
         this.isInjected = isInjected;
         this.isDefault = isDefault;
-        this.constructor = constructor;
-        this.injector = injector;
+        this.instantiator = instantiator;
+        this.parameterFields = parameterFields;
         this.parameterTypes = parameterTypes;
     }
 
@@ -147,6 +262,52 @@ final class PageConstructor {
         return count;
     }
 
+    /**
+     * Looks up the providers of the Guice provided arguments. The constructor
+     * itself does not depend on the injector, so it can be shared by the
+     * child injectors of several tenants.
+     * 
+     * @param injector
+     *            the injector
+     * @return the arguments
+     */
+    Arguments getArguments(final Injector injector) {
+        final Provider<?>[] providers = new Provider<?>[keys.length];
+        final int[] concurrent = new int[keys.length];
+        int concurrentCount = 0;
+
+        for (int idx = 0; idx < keys.length; idx++) {
+            final Key<?> key = keys[idx];
+
+            if (key == null) {
+                continue;
+            }
+
+            providers[idx] = injector.getProvider(key);
+
+            if (wantsConcurrent[idx] && !ConcurrentProviders.isServletScoped(injector, key)) {
+                concurrent[concurrentCount++] = idx;
+            }
+        }
+
+        if (concurrentCount < 2) {
+            return new Arguments(providers, null, null);
+        }
+
+        final ConcurrentProviders concurrentProviders = injector.getInstance(ConcurrentProviders.class);
+
+        // the last concurrent argument is resolved by the calling thread
+        return new Arguments(providers, concurrentProviders, Arrays.copyOf(concurrent, concurrentCount - 1));
+    }
+
+    /**
+     * @return the {@link Parameter} annotations of the constructor arguments,
+     *         {@code null} for arguments that are not parameters
+     */
+    Parameter[] getParameters() {
+        return params;
+    }
+
     boolean isDefault() {
         return isDefault;
     }
@@ -159,44 +320,98 @@ final class PageConstructor {
         return isParametersOnly;
     }
 
-    private Page newInstance(final Object[] args) throws Error {
-        constructor.setAccessible(true);
-
+    private Page newInstance(final Object[] args) {
         try {
-            return constructor.newInstance(args);
-        } catch (final InstantiationException e) {
-            throw new WicketRuntimeException(e);
-        } catch (final IllegalAccessException e) {
-            throw new WicketRuntimeException(e);
-        } catch (final InvocationTargetException e) {
-            throw new WicketRuntimeException(e);
+            return (Page) instantiator.invokeExact(args);
+        } catch (final Throwable e) {
+            throw GeneratedPageMaker.wrap(e);
         }
     }
 
-    public Page newInstance(final PageParameters parameters) {
+    /**
+     * Creates a page.
+     * 
+     * @param parameters
+     *            the parameters passed to the page
+     * @param arguments
+     *            the arguments returned by {@link #getArguments(Injector)}
+     * @param membersInjection
+     *            injects the members of the page
+     * @return the page
+     */
+    Page newInstance(final PageParameters parameters, final Arguments arguments,
+            final MembersInjection membersInjection) {
+        if (parameterFields != null) {
+            parameterFields.checkPresent(parameters);
+        }
+
         if (isParametersOnly) {
-            return newInstance(new Object[] { parameters });
+            final Page page = newInstance(new Object[] { parameters });
+
+            if (parameterFields != null) {
+                parameterFields.inject(page, parameters);
+            }
+
+            return page;
         }
 
         final Object[] args = new Object[params.length];
-        final PageParameters cleansed = new PageParameters();
+        final PageParameters cleansed = needsCleansed ? new PageParameters() : null;
+        final Provider<?>[] providers = arguments.providers;
+        final ConcurrentProviders concurrentProviders = arguments.concurrentProviders;
+        final int[] concurrent = arguments.concurrent;
+        final Future<?>[] pending = concurrent != null ? concurrentProviders.submit(providers, concurrent) : null;
+        final ParameterErrors errors = ParameterErrors.open();
+        final Object[] fieldValues;
 
-        for (int idx = 0; idx < params.length; idx++) {
-            final Provider<?> provider = providers[idx];
+        try {
+            for (int idx = 0; idx < params.length; idx++) {
+                final Provider<?> provider = providers[idx];
 
-            if (provider != null) {
-                args[idx] = provider.get();
-            } else {
-                final Parameter param = params[idx];
-                final Class<?> cls = parameterTypes[idx];
+                if (arguments.isConcurrent[idx]) {
+                    continue;
+                }
+
+                final ParameterBinding binding = bindings[idx];
 
-                args[idx] = gpp.get(parameters, param, cls, cleansed, idx == 0);
+                if (provider != null) {
+                    args[idx] = provider.get();
+                } else if (binding != null) {
+                    args[idx] = binding.get(parameters, cleansed);
+                } else {
+                    final Parameter param = params[idx];
+                    final Class<?> cls = parameterTypes[idx];
+
+                    args[idx] = gpp.get(parameters, param, cls, cleansed, idx == 0);
+                }
             }
+
+            // the fields are set once the page exists, but their values are
+            // verified now and passed to the constructor as part of cleansed
+            fieldValues = parameterFields != null ? parameterFields.decode(parameters, cleansed) : null;
+
+            gpp.checkErrors(pageClass, errors);
+        } catch (final RuntimeException e) {
+            if (pending != null) {
+                concurrentProviders.cancel(pending);
+            }
+
+            throw e;
+        } finally {
+            errors.close();
+        }
+
+        if (pending != null) {
+            concurrentProviders.join(pending, concurrent, args);
         }
 
         final Page page = newInstance(args);
 
-        injector.injectMembers(page);
+        if (fieldValues != null) {
+            parameterFields.set(page, fieldValues);
+        }
+
+        membersInjection.injectMembers(page);
 
         return page;
     }
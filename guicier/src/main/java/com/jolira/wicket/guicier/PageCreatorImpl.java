@@ -3,29 +3,118 @@ package com.jolira.wicket.guicier;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 import org.apache.wicket.Page;
-import org.apache.wicket.WicketRuntimeException;
 import org.apache.wicket.request.component.IRequestablePage;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 
 import com.google.inject.Injector;
+import com.google.inject.ConfigurationException;
+import com.jolira.wicket.guicier.PageConstructor.Arguments;
 
 final class PageCreatorImpl implements PageMaker {
+    /**
+     * Creates pages using the providers and member injection of one injector.
+     * Everything else is shared by all the injectors.
+     */
+    private final class Bound implements PageMaker {
+        private final Arguments[] annotatedArguments;
+        private final Arguments paramsOnlyArguments;
+        private final Arguments defaultArguments;
+        private final MembersInjection membersInjection;
+
+        Bound(final Injector injector, final Class<?> cls) {
+            annotatedArguments = new Arguments[annotatedConstructors.length];
+
+            for (int idx = 0; idx < annotatedConstructors.length; idx++) {
+                annotatedArguments[idx] = annotatedConstructors[idx].getArguments(injector);
+            }
+
+            paramsOnlyArguments = paramsOnlyConstructor != null ? paramsOnlyConstructor.getArguments(injector) : null;
+            defaultArguments = defaultConstructor != null ? defaultConstructor.getArguments(injector) : null;
+            membersInjection = new MembersInjection(injector, cls);
+        }
+
+        @Override
+        public Page create(final PageParameters parameters) {
+            final int matched = keys != null ? findIndexed(parameters) : find(parameters);
+
+            if (matched >= 0) {
+                return annotatedConstructors[matched].newInstance(parameters, annotatedArguments[matched],
+                        membersInjection);
+            }
+
+            if (paramsOnlyConstructor != null) {
+                final PageParameters params = parameters == null ? new PageParameters() : parameters;
+
+                return paramsOnlyConstructor.newInstance(params, paramsOnlyArguments, membersInjection);
+            }
+
+            if (defaultConstructor != null) {
+                return defaultConstructor.newInstance(parameters, defaultArguments, membersInjection);
+            }
+
+            throw rejection.reject(parameters);
+        }
+    }
+
+    /**
+     * The maximum number of distinct parameter keys that fit into the
+     * {@code long} masks used by the dispatch index.
+     */
+    private static final int MAX_INDEXED_KEYS = Long.SIZE;
+
+    private static String[] getKeys(final PageConstructor[] constructors) {
+        final Set<String> keys = new LinkedHashSet<String>();
+
+        for (final PageConstructor constructor : constructors) {
+            for (final Parameter param : constructor.getParameters()) {
+                if (param != null) {
+                    keys.add(param.value());
+                }
+            }
+        }
+
+        return keys.toArray(new String[keys.size()]);
+    }
+
+    private static int indexOf(final String[] keys, final String key) {
+        for (int idx = 0; idx < keys.length; idx++) {
+            if (keys[idx].equals(key)) {
+                return idx;
+            }
+        }
+
+        return -1;
+    }
+
+    private final String[] keys;
+    private final long[] requiredMasks;
+    private final int[][] weights;
     private final PageConstructor defaultConstructor;
     private final PageConstructor paramsOnlyConstructor;
     private final PageConstructor[] annotatedConstructors;
+    private final PageRejectedException rejection;
+    private final Injector injector;
     private final Class<? extends IRequestablePage> pageClass;
+    private final Bound bound;
+    private final ConfigurationException failure;
 
     <C extends IRequestablePage> PageCreatorImpl(final Injector injector, final Class<C> cls) {
+        this.injector = injector;
         pageClass = cls;
+        rejection = new PageRejectedException(cls);
+        final Guicier gpp = injector.getInstance(Guicier.class);
+        final ParameterFields parameterFields = ParameterFields.get(gpp, cls, rejection);
         final Constructor<Page>[] constructors = (Constructor<Page>[]) cls.getDeclaredConstructors();
         final Collection<PageConstructor> _annotatedConstructors = new ArrayList<PageConstructor>();
         PageConstructor _defaultConstructor = null;
         PageConstructor _paramsOnlyConstructor = null;
 
         for (final Constructor<Page> _constructor : constructors) {
-            final PageConstructor constructor = PageConstructor.get(injector, _constructor);
+            final PageConstructor constructor = PageConstructor.get(gpp, _constructor, parameterFields);
 
             if (constructor == null) {
                 continue;
@@ -45,47 +134,156 @@ final class PageCreatorImpl implements PageMaker {
         defaultConstructor = _defaultConstructor;
         paramsOnlyConstructor = _paramsOnlyConstructor;
         annotatedConstructors = _annotatedConstructors.toArray(new PageConstructor[size]);
+
+        final String[] _keys = getKeys(annotatedConstructors);
+        final boolean indexed = _keys.length <= MAX_INDEXED_KEYS;
+
+        keys = indexed ? _keys : null;
+        requiredMasks = new long[size];
+        weights = new int[size][_keys.length];
+
+        for (int idx = 0; indexed && idx < size; idx++) {
+            for (final Parameter param : annotatedConstructors[idx].getParameters()) {
+                if (param == null) {
+                    continue;
+                }
+
+                final int bit = indexOf(_keys, param.value());
+
+                weights[idx][bit]++;
+
+                if (!param.optional()) {
+                    requiredMasks[idx] |= 1L << bit;
+                }
+            }
+        }
+
+        Bound _bound = null;
+        ConfigurationException _failure = null;
+
+        try {
+            _bound = new Bound(injector, cls);
+        } catch (final ConfigurationException e) {
+            _failure = e; // the arguments may only be bound by tenants
+        }
+
+        bound = _bound;
+        failure = _failure;
     }
 
     @Override
     public Page create(final PageParameters parameters) {
+        validate();
+
+        return bound.create(parameters);
+    }
+
+    /**
+     * Throws the exception that occurred when the providers of the constructor
+     * arguments were looked up in the injector of this maker.
+     * 
+     * @throws ConfigurationException
+     *             an argument is not bound
+     */
+    void validate() {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Returns a maker that shares the constructors and the dispatch index of
+     * this maker, but uses the providers of another injector, such as the
+     * child injector of a tenant.
+     * 
+     * @param _injector
+     *            the injector
+     * @return the maker
+     */
+    PageMaker forInjector(final Injector _injector) {
+        return _injector == injector ? this : new Bound(_injector, pageClass);
+    }
+
+    /**
+     * Finds the constructor with the highest match count by asking every
+     * constructor in turn. Only used if there are too many distinct keys for
+     * the dispatch index.
+     * 
+     * @return the index of the constructor or {@code -1}
+     */
+    private int find(final PageParameters parameters) {
         int matchedCount = -1;
-        PageConstructor matchedConstructor = null;
+        int matched = -1;
 
-        for (final PageConstructor constructor : annotatedConstructors) {
-            final int count = constructor.getMatchCount(parameters);
+        for (int idx = 0; idx < annotatedConstructors.length; idx++) {
+            final int count = annotatedConstructors[idx].getMatchCount(parameters);
 
             if (count > matchedCount) {
                 matchedCount = count;
-                matchedConstructor = constructor;
+                matched = idx;
             }
         }
 
-        if (matchedConstructor != null) {
-            return matchedConstructor.newInstance(parameters);
-        }
+        return matched;
+    }
 
-        if (paramsOnlyConstructor != null) {
-            final PageParameters params = parameters == null ? new PageParameters() : parameters;
+    /**
+     * Finds the constructor with the highest match count using the dispatch
+     * index. Every distinct key is looked up exactly once and no objects are
+     * allocated. Ties go to the constructor found first, just like in
+     * {@link #find(PageParameters)}.
+     * 
+     * @return the index of the constructor or {@code -1}
+     */
+    private int findIndexed(final PageParameters parameters) {
+        final long present = getPresentMask(parameters);
+        int matchedCount = -1;
+        int matched = -1;
 
-            return paramsOnlyConstructor.newInstance(params);
-        }
+        for (int idx = 0; idx < annotatedConstructors.length; idx++) {
+            if ((requiredMasks[idx] & ~present) != 0) {
+                continue;
+            }
+
+            final int[] _weights = weights[idx];
+            int count = 0;
 
-        if (defaultConstructor != null) {
-            return defaultConstructor.newInstance(parameters);
+            for (long bits = present; bits != 0; bits &= bits - 1) {
+                count += _weights[Long.numberOfTrailingZeros(bits)];
+            }
+
+            if (count > matchedCount) {
+                matchedCount = count;
+                matched = idx;
+            }
         }
 
-        final StringBuilder buf = new StringBuilder();
+        return matched;
+    }
+
+    /**
+     * @return {@code true} if pages are created without member injection,
+     *         because the page class has no injection points
+     */
+    boolean isMemberInjectionSkipped() {
+        validate();
+
+        return bound.membersInjection.isSkipped();
+    }
+
+    private long getPresentMask(final PageParameters parameters) {
+        if (parameters == null) {
+            return 0;
+        }
 
-        buf.append("no suitable constructor for page ");
-        buf.append(pageClass);
+        long present = 0;
 
-        if (parameters != null) {
-            buf.append(" using { ");
-            buf.append(parameters);
-            buf.append(" }");
+        for (int bit = 0; bit < keys.length; bit++) {
+            if (parameters.getPosition(keys[bit]) >= 0) {
+                present |= 1L << bit;
+            }
         }
 
-        throw new WicketRuntimeException(buf.toString());
+        return present;
     }
 }
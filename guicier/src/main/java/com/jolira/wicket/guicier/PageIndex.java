@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.wicket.WicketRuntimeException;
+
+/**
+ * Reads the index of page classes written by the {@link PageMakerProcessor}.
+ * The index is a plain text resource with one class name per line.
+ *
+ * @author jfk
+ * @since 2.5
+ */
+final class PageIndex {
+    /**
+     * The name of the resource containing the index.
+     */
+    static final String RESOURCE = "META-INF/guicier/pages";
+
+    private static final String UTF8 = "UTF-8";
+
+    /**
+     * Reads the names of all indexed page classes.
+     *
+     * @param loader
+     *            the class loader used to find the index resources
+     * @return the class names, in the order they were found
+     */
+    static Collection<String> read(final ClassLoader loader) {
+        final Set<String> names = new LinkedHashSet<String>();
+
+        try {
+            final Enumeration<URL> resources = loader.getResources(RESOURCE);
+
+            while (resources.hasMoreElements()) {
+                read(resources.nextElement().openStream(), names);
+            }
+        } catch (final IOException e) {
+            throw new WicketRuntimeException("cannot read " + RESOURCE, e);
+        }
+
+        return names;
+    }
+
+    /**
+     * Reads the class names from a stream, ignoring blank lines and comments.
+     * The stream is closed.
+     *
+     * @param in
+     *            the stream
+     * @param names
+     *            the collection the names are added to
+     * @throws IOException
+     *             reading failed
+     */
+    static void read(final InputStream in, final Collection<String> names) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF8));
+
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                final String name = line.trim();
+
+                if (!name.isEmpty() && !name.startsWith("#")) {
+                    names.add(name);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private PageIndex() {
+        // nothing
+    }
+}
@@ -0,0 +1,684 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Generates a {@link GeneratedPageMaker} for every page that has an
+ * {@code @Inject} annotated constructor. The generated makers select the
+ * constructor using the same rules as the reflective {@link PageMaker}, but
+ * call it directly. {@link GuicierPageFactory} uses a generated maker whenever
+ * one is found and falls back to reflection otherwise.
+ * <p>
+ * The processor is optional and has to be enabled explicitly, for instance
+ * using {@code -processor com.jolira.wicket.guicier.PageMakerProcessor}.
+ * Pages that cannot be called from generated code (private classes or
+ * constructors, non-static inner classes) are skipped, and so are pages using
+ * {@link Concurrent}, which are left to the reflective maker.
+ * <p>
+ * The processor also writes an index of all these pages to
+ * {@code META-INF/guicier/pages}, which {@link GuicierWebApplication} uses to
+ * build the makers when the application starts.
+ *
+ * @author jfk
+ * @since 2.5
+ */
+@SupportedAnnotationTypes({ "javax.inject.Inject", "com.google.inject.Inject" })
+public class PageMakerProcessor extends AbstractProcessor {
+    private static final class Argument {
+        final String type;
+        final String boxedType;
+        final String key;
+        final boolean optional;
+        final boolean isParameter;
+        final boolean isPageParameters;
+
+        Argument(final String type, final String boxedType, final String key, final boolean optional,
+                final boolean isParameter, final boolean isPageParameters) {
+            this.type = type;
+            this.boxedType = boxedType;
+            this.key = key;
+            this.optional = optional;
+            this.isParameter = isParameter;
+            this.isPageParameters = isPageParameters;
+        }
+    }
+
+    private static final class Candidate {
+        final ExecutableElement element;
+        final Argument[] args;
+        final boolean isDefault;
+        final boolean isParametersOnly;
+        final boolean isInjected;
+
+        Candidate(final ExecutableElement element, final Argument[] args, final boolean isDefault,
+                final boolean isParametersOnly, final boolean isInjected) {
+            this.element = element;
+            this.args = args;
+            this.isDefault = isDefault;
+            this.isParametersOnly = isParametersOnly;
+            this.isInjected = isInjected;
+        }
+    }
+
+    private static final String PAGE = "org.apache.wicket.Page";
+    private static final String PAGE_PARAMETERS = "org.apache.wicket.request.mapper.parameter.PageParameters";
+    private static final String PARAMETER = Parameter.class.getName();
+    private static final String JAVAX_INJECT = "javax.inject.Inject";
+    private static final String GUICE_INJECT = "com.google.inject.Inject";
+    private static final String CONCURRENT = Concurrent.class.getName();
+
+    private static AnnotationMirror getAnnotation(final Element element, final String name) {
+        for (final AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            final TypeElement type = (TypeElement) mirror.getAnnotationType().asElement();
+
+            if (type.getQualifiedName().contentEquals(name)) {
+                return mirror;
+            }
+        }
+
+        return null;
+    }
+
+    private static boolean isPrivate(final Element element) {
+        return element.getModifiers().contains(Modifier.PRIVATE);
+    }
+
+    private static String quote(final String value) {
+        final StringBuilder buf = new StringBuilder("\"");
+
+        for (final char c : value.toCharArray()) {
+            switch (c) {
+            case '"':
+            case '\\':
+                buf.append('\\').append(c);
+                break;
+            default:
+                if (c < ' ' || c > '~') {
+                    buf.append(String.format("\\u%04x", Integer.valueOf(c)));
+                } else {
+                    buf.append(c);
+                }
+            }
+        }
+
+        return buf.append('"').toString();
+    }
+
+    private final Set<String> processed = new HashSet<String>();
+    private final Set<String> pages = new TreeSet<String>();
+
+    private Argument getArgument(final VariableElement param) {
+        final Types types = processingEnv.getTypeUtils();
+        final Elements elements = processingEnv.getElementUtils();
+        final TypeMirror type = types.erasure(param.asType());
+        final TypeElement pageParameters = elements.getTypeElement(PAGE_PARAMETERS);
+        final boolean isPageParameters = type.getKind() == TypeKind.DECLARED
+                && types.isSubtype(type, types.erasure(pageParameters.asType()));
+        final String boxedType = type.getKind().isPrimitive() ? types.boxedClass(types.getPrimitiveType(type.getKind()))
+                .getQualifiedName().toString() : type.toString();
+        final AnnotationMirror parameter = getAnnotation(param, PARAMETER);
+
+        if (parameter == null) {
+            return new Argument(type.toString(), boxedType, null, false, false, isPageParameters);
+        }
+
+        String key = null;
+        boolean optional = false;
+        final Map<? extends ExecutableElement, ? extends AnnotationValue> values = elements
+                .getElementValuesWithDefaults(parameter);
+
+        for (final Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+            final String name = entry.getKey().getSimpleName().toString();
+            final Object value = entry.getValue().getValue();
+
+            if ("value".equals(name)) {
+                key = (String) value;
+            } else if ("optional".equals(name)) {
+                optional = ((Boolean) value).booleanValue();
+            }
+        }
+
+        return new Argument(type.toString(), boxedType, key, optional, true, isPageParameters);
+    }
+
+    /**
+     * Classifies a constructor just like {@code PageConstructor.get}.
+     */
+    private Candidate getCandidate(final ExecutableElement constructor) {
+        final boolean isInjected = getAnnotation(constructor, JAVAX_INJECT) != null
+                || getAnnotation(constructor, GUICE_INJECT) != null;
+        final List<? extends VariableElement> params = constructor.getParameters();
+        final Argument[] args = new Argument[params.size()];
+        int paramCount = 0;
+        boolean isParametersOnly = false;
+
+        for (int idx = 0; idx < args.length; idx++) {
+            final Argument arg = getArgument(params.get(idx));
+
+            if (arg.isParameter || arg.isPageParameters) {
+                paramCount++;
+                isParametersOnly = paramCount == 1 && arg.isPageParameters && !isInjected;
+            } else if (!isInjected) {
+                return null;
+            }
+
+            args[idx] = arg;
+        }
+
+        return new Candidate(constructor, args, paramCount == 0, isParametersOnly, isInjected);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    /**
+     * Checks if the generated code can call the constructors of the type.
+     */
+    private boolean isAccessible(final TypeElement type) {
+        for (Element element = type; element instanceof TypeElement; element = element.getEnclosingElement()) {
+            final TypeElement _type = (TypeElement) element;
+
+            if (isPrivate(_type)) {
+                return false;
+            }
+
+            if (_type.getNestingKind() == NestingKind.MEMBER && !_type.getModifiers().contains(Modifier.STATIC)) {
+                return false;
+            }
+
+            if (_type.getNestingKind() == NestingKind.LOCAL || _type.getNestingKind() == NestingKind.ANONYMOUS) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks if {@link Concurrent} is used by the type, its constructors or
+     * their arguments.
+     */
+    private boolean isConcurrent(final TypeElement type) {
+        if (getAnnotation(type, CONCURRENT) != null) {
+            return true;
+        }
+
+        for (final ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (getAnnotation(constructor, CONCURRENT) != null) {
+                return true;
+            }
+
+            for (final VariableElement param : constructor.getParameters()) {
+                if (getAnnotation(param, CONCURRENT) != null) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private boolean isPage(final TypeElement type) {
+        final Types types = processingEnv.getTypeUtils();
+        final Elements elements = processingEnv.getElementUtils();
+        final TypeElement page = elements.getTypeElement(PAGE);
+
+        if (page == null || !types.isSubtype(types.erasure(type.asType()), types.erasure(page.asType()))) {
+            return false;
+        }
+
+        return !type.getModifiers().contains(Modifier.ABSTRACT);
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        final Elements elements = processingEnv.getElementUtils();
+
+        for (final TypeElement annotation : annotations) {
+            final Set<? extends Element> constructors = roundEnv.getElementsAnnotatedWith(annotation);
+
+            for (final ExecutableElement constructor : ElementFilter.constructorsIn(constructors)) {
+                final TypeElement type = (TypeElement) constructor.getEnclosingElement();
+                final String name = elements.getBinaryName(type).toString();
+
+                if (!processed.add(name) || !isPage(type)) {
+                    continue;
+                }
+
+                pages.add(name);
+
+                if (!isAccessible(type) || isConcurrent(type)) {
+                    continue;
+                }
+
+                try {
+                    process(type);
+                } catch (final IOException e) {
+                    processingEnv.getMessager().printMessage(Kind.ERROR,
+                            "cannot generate page maker: " + e.getMessage(), type);
+                }
+            }
+        }
+
+        if (roundEnv.processingOver() && !pages.isEmpty()) {
+            try {
+                writeIndex();
+            } catch (final IOException e) {
+                processingEnv.getMessager().printMessage(Kind.ERROR,
+                        "cannot write " + PageIndex.RESOURCE + ": " + e.getMessage());
+            }
+        }
+
+        return false;
+    }
+
+    private void process(final TypeElement type) throws IOException {
+        final List<Candidate> annotated = new ArrayList<Candidate>();
+        Candidate defaultConstructor = null;
+        Candidate paramsOnlyConstructor = null;
+
+        for (final ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            final Candidate candidate = getCandidate(constructor);
+
+            if (candidate == null) {
+                continue;
+            }
+
+            if (candidate.isDefault) {
+                defaultConstructor = candidate;
+            } else if (candidate.isParametersOnly) {
+                paramsOnlyConstructor = candidate;
+            } else if (candidate.isInjected) {
+                annotated.add(candidate);
+            }
+        }
+
+        final List<Candidate> used = new ArrayList<Candidate>(annotated);
+
+        if (paramsOnlyConstructor != null) {
+            used.add(paramsOnlyConstructor);
+        }
+
+        if (defaultConstructor != null) {
+            used.add(defaultConstructor);
+        }
+
+        for (final Candidate candidate : used) {
+            if (isPrivate(candidate.element)) {
+                return;
+            }
+        }
+
+        write(type, used, annotated.size(), paramsOnlyConstructor, defaultConstructor);
+    }
+
+    private void write(final TypeElement type, final List<Candidate> used, final int annotatedCount,
+            final Candidate paramsOnlyConstructor, final Candidate defaultConstructor) throws IOException {
+        final Elements elements = processingEnv.getElementUtils();
+        final PackageElement pkg = elements.getPackageOf(type);
+        final String pkgName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        final String binaryName = elements.getBinaryName(type).toString();
+        final String simpleName = (pkgName.isEmpty() ? binaryName : binaryName.substring(pkgName.length() + 1))
+                + GeneratedPageMaker.SUFFIX;
+        final String pageName = type.getQualifiedName().toString();
+        final JavaFileObject file = processingEnv.getFiler().createSourceFile(binaryName + GeneratedPageMaker.SUFFIX,
+                type);
+        final PrintWriter out = new PrintWriter(file.openWriter());
+
+        try {
+            if (!pkgName.isEmpty()) {
+                out.println("package " + pkgName + ";");
+                out.println();
+            }
+
+            out.println("/**");
+            out.println(" * Generated by " + PageMakerProcessor.class.getName() + ". Do not edit.");
+            out.println(" */");
+            out.println("@SuppressWarnings({ \"unchecked\", \"rawtypes\" })");
+            out.println("public final class " + simpleName + " extends " + GeneratedPageMaker.class.getName() + " {");
+
+            for (int c = 0; c < used.size(); c++) {
+                writeFields(out, c, used.get(c));
+            }
+
+            out.println();
+            out.println("    @com.google.inject.Inject");
+            out.println("    public " + simpleName + "(final com.google.inject.Injector injector) {");
+            out.println("        super(injector, " + pageName + ".class);");
+
+            for (int c = 0; c < used.size(); c++) {
+                final Argument[] args = used.get(c).args;
+
+                for (int a = 0; a < args.length; a++) {
+                    final String field = c + "_" + a;
+
+                    if (args[a].isParameter) {
+                        out.println("        arg" + field + " = getParameter(SIGNATURE" + c + ", " + a + ");");
+                    } else if (!args[a].isPageParameters) {
+                        out.println("        key" + field + " = getKey(SIGNATURE" + c + ", " + a + ");");
+                        out.println("        arg" + field + " = getProvider(key" + field + ");");
+                    }
+                }
+            }
+
+            out.println("    }");
+            writeBind(out, simpleName, used);
+
+            for (int c = 0; c < annotatedCount; c++) {
+                writeMatch(out, c, used.get(c));
+            }
+
+            for (int c = 0; c < used.size(); c++) {
+                writeCreate(out, c, used.get(c), pageName);
+            }
+
+            writeDispatch(out, used, annotatedCount, paramsOnlyConstructor, defaultConstructor);
+            out.println("}");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the constructor used for tenants, which shares the bindings and
+     * keys of an existing maker and only looks up the providers.
+     */
+    private void writeBind(final PrintWriter out, final String simpleName, final List<Candidate> used) {
+        out.println();
+        out.println("    private " + simpleName + "(final com.google.inject.Injector injector, final " + simpleName
+                + " shared) {");
+        out.println("        super(injector, shared);");
+
+        for (int c = 0; c < used.size(); c++) {
+            final Argument[] args = used.get(c).args;
+
+            for (int a = 0; a < args.length; a++) {
+                final String field = c + "_" + a;
+
+                if (args[a].isParameter) {
+                    out.println("        arg" + field + " = shared.arg" + field + ";");
+                } else if (!args[a].isPageParameters) {
+                    out.println("        key" + field + " = shared.key" + field + ";");
+                    out.println("        arg" + field + " = getProvider(key" + field + ");");
+                }
+            }
+        }
+
+        out.println("    }");
+        out.println();
+        out.println("    @Override");
+        out.println("    protected " + GeneratedPageMaker.class.getName()
+                + " bind(final com.google.inject.Injector injector) {");
+        out.println("        return new " + simpleName + "(injector, this);");
+        out.println("    }");
+    }
+
+    private void writeCreate(final PrintWriter out, final int c, final Candidate candidate, final String pageName) {
+        final Argument[] args = candidate.args;
+        final StringBuilder call = new StringBuilder();
+
+        out.println();
+        out.println("    private " + pageName + " create" + c
+                + "(final org.apache.wicket.request.mapper.parameter.PageParameters parameters) {");
+
+        boolean needsCleansed = false;
+
+        for (int a = 1; a < args.length; a++) {
+            needsCleansed |= args[a].isPageParameters;
+        }
+
+        // the verified copy of the parameters is only built if it is passed to the page
+        if (needsCleansed) {
+            out.println("        final org.apache.wicket.request.mapper.parameter.PageParameters cleansed"
+                    + " = new org.apache.wicket.request.mapper.parameter.PageParameters();");
+        }
+
+        final String cleansed = needsCleansed ? "cleansed" : "null";
+        boolean decodes = false;
+
+        for (final Argument arg : args) {
+            decodes |= arg.isParameter;
+        }
+
+        // rejected values are collected and reported once all arguments are decoded
+        if (decodes) {
+            for (int a = 0; a < args.length; a++) {
+                out.println("        final " + args[a].type + " a" + a + ";");
+            }
+
+            out.println("        final " + ParameterErrors.class.getName() + " errors = openErrors();");
+            out.println();
+            out.println("        try {");
+        }
+
+        final String indent = decodes ? "            " : "        ";
+
+        for (int a = 0; a < args.length; a++) {
+            final Argument arg = args[a];
+            final String field = "arg" + c + "_" + a;
+            final String value;
+
+            if (arg.isPageParameters) {
+                value = a == 0 ? "parameters" : "cleansed";
+            } else if (arg.isParameter) {
+                value = "(" + arg.boxedType + ") " + field + ".get(parameters, " + cleansed + ")";
+            } else {
+                value = "(" + arg.boxedType + ") " + field + ".get()";
+            }
+
+            if (decodes) {
+                out.println(indent + "a" + a + " = " + value + ";");
+            } else {
+                out.println(indent + "final " + arg.type + " a" + a + " = " + value + ";");
+            }
+
+            if (a > 0) {
+                call.append(", ");
+            }
+
+            call.append("a").append(a);
+        }
+
+        if (decodes) {
+            out.println();
+            out.println("            checkErrors(errors);");
+            out.println("        } finally {");
+            out.println("            closeErrors(errors);");
+            out.println("        }");
+        }
+
+        out.println();
+        out.println("        try {");
+        out.println("            return new " + pageName + "(" + call + ");");
+        out.println("        } catch (final Throwable e) {");
+        out.println("            throw wrap(e);");
+        out.println("        }");
+        out.println("    }");
+    }
+
+    private void writeDispatch(final PrintWriter out, final List<Candidate> used, final int annotatedCount,
+            final Candidate paramsOnlyConstructor, final Candidate defaultConstructor) {
+        out.println();
+        out.println("    @Override");
+        out.println("    public org.apache.wicket.Page create("
+                + "final org.apache.wicket.request.mapper.parameter.PageParameters parameters) {");
+        out.println("        checkFields(parameters);");
+        out.println();
+
+        if (annotatedCount > 0) {
+            out.println("        int matchedCount = -1;");
+            out.println("        int matched = -1;");
+            out.println("        int count;");
+            out.println();
+
+            for (int c = 0; c < annotatedCount; c++) {
+                out.println("        count = match" + c + "(parameters);");
+                out.println("        if (count > matchedCount) {");
+                out.println("            matchedCount = count;");
+                out.println("            matched = " + c + ";");
+                out.println("        }");
+            }
+
+            out.println();
+            out.println("        switch (matched) {");
+
+            for (int c = 0; c < annotatedCount; c++) {
+                out.println("        case " + c + ":");
+                out.println("            return init(create" + c + "(parameters), parameters);");
+            }
+
+            out.println("        }");
+            out.println();
+        }
+
+        if (paramsOnlyConstructor != null) {
+            final int c = used.indexOf(paramsOnlyConstructor);
+
+            out.println("        final org.apache.wicket.request.mapper.parameter.PageParameters params"
+                    + " = parameters != null ? parameters"
+                    + " : new org.apache.wicket.request.mapper.parameter.PageParameters();");
+            out.println();
+            out.println("        return setFields(create" + c + "(params), params);");
+        } else if (defaultConstructor != null) {
+            final int c = used.indexOf(defaultConstructor);
+
+            out.println("        return init(create" + c + "(parameters), parameters);");
+        } else {
+            out.println("        throw noSuitableConstructor(parameters);");
+        }
+
+        out.println("    }");
+    }
+
+    private void writeFields(final PrintWriter out, final int c, final Candidate candidate) {
+        final Argument[] args = candidate.args;
+        final StringBuilder signature = new StringBuilder();
+
+        for (int a = 0; a < args.length; a++) {
+            if (a > 0) {
+                signature.append(", ");
+            }
+
+            signature.append(args[a].type).append(".class");
+        }
+
+        out.println("    private static final Class<?>[] SIGNATURE" + c + " = { " + signature + " };");
+
+        for (int a = 0; a < args.length; a++) {
+            final Argument arg = args[a];
+
+            if (arg.isPageParameters) {
+                continue;
+            }
+
+            if (arg.isParameter) {
+                out.println("    private final " + ParameterBinding.class.getName() + " arg" + c + "_" + a + ";");
+            } else {
+                out.println("    private final com.google.inject.Key key" + c + "_" + a + ";");
+                out.println("    private final com.google.inject.Provider arg" + c + "_" + a + ";");
+            }
+        }
+    }
+
+    /**
+     * Writes the index of all pages with {@code @Inject} constructors. Names
+     * from an existing index are kept, so incremental builds do not lose the
+     * pages that were not recompiled.
+     */
+    private void writeIndex() throws IOException {
+        final Filer filer = processingEnv.getFiler();
+
+        try {
+            final FileObject existing = filer.getResource(StandardLocation.CLASS_OUTPUT, "", PageIndex.RESOURCE);
+
+            PageIndex.read(existing.openInputStream(), pages);
+        } catch (final IOException e) {
+            // no index yet
+        }
+
+        final FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", PageIndex.RESOURCE);
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(file.openOutputStream(), "UTF-8"));
+
+        try {
+            out.println("# Generated by " + PageMakerProcessor.class.getName() + ". Do not edit.");
+
+            for (final String page : pages) {
+                out.println(page);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the equivalent of {@code PageConstructor.getMatchCount}.
+     */
+    private void writeMatch(final PrintWriter out, final int c, final Candidate candidate) {
+        int required = 0;
+
+        out.println();
+        out.println("    private static int match" + c
+                + "(final org.apache.wicket.request.mapper.parameter.PageParameters parameters) {");
+
+        for (final Argument arg : candidate.args) {
+            if (arg.isParameter && !arg.optional) {
+                required++;
+                out.println("        if (!isPresent(parameters, " + quote(arg.key) + ")) {");
+                out.println("            return -1;");
+                out.println("        }");
+            }
+        }
+
+        out.println("        int count = " + required + ";");
+
+        for (final Argument arg : candidate.args) {
+            if (arg.isParameter && arg.optional) {
+                out.println("        if (isPresent(parameters, " + quote(arg.key) + ")) {");
+                out.println("            count++;");
+                out.println("        }");
+            }
+        }
+
+        out.println("        return count;");
+        out.println("    }");
+    }
+}
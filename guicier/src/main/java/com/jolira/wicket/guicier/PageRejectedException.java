@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Thrown if no constructor of a page can be used with the parameters of a
+ * request. Requests with parameters that do not fit a page are usually sent by
+ * bots and scanners, so the exception is cheap: it carries no stack trace and
+ * shares its message with the other rejections of the same page class. Every
+ * rejection is a new instance, so causes or suppressed exceptions added by a
+ * caller do not leak into other requests. The parameters are logged at debug
+ * level.
+ * <p>
+ * {@link GuicierWebApplication} answers requests failing with this exception
+ * using an HTTP error code rather than an error page.
+ *
+ * @author jfk
+ * @since 2.5
+ * @see GuicierWebApplication#getRejectedPageStatus()
+ */
+public final class PageRejectedException extends WicketRuntimeException {
+    private static final long serialVersionUID = -2178545306398357127L;
+    private static final Logger LOG = LoggerFactory.getLogger(PageRejectedException.class);
+
+    /**
+     * Finds a {@link PageRejectedException} in the causes of an exception.
+     *
+     * @param e
+     *            the exception
+     * @return the rejection or {@code null} if there is none
+     */
+    public static PageRejectedException find(final Throwable e) {
+        return Causes.find(e, PageRejectedException.class);
+    }
+
+    private final Class<?> pageClass;
+
+    PageRejectedException(final Class<?> pageClass) {
+        this(pageClass, "no suitable constructor for page " + pageClass);
+    }
+
+    private PageRejectedException(final Class<?> pageClass, final String message) {
+        super(message);
+
+        this.pageClass = pageClass;
+    }
+
+    /**
+     * Rejections never have a stack trace.
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+    /**
+     * @return the page class that rejected the request
+     */
+    public Class<?> getPageClass() {
+        return pageClass;
+    }
+
+    /**
+     * Logs the rejected parameters if debugging is enabled.
+     *
+     * @param parameters
+     *            the parameters passed to the page
+     * @return a new exception for the page class of this one
+     */
+    PageRejectedException reject(final PageParameters parameters) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("no suitable constructor for page {} using {}", pageClass, parameters);
+        }
+
+        return new PageRejectedException(pageClass, getMessage());
+    }
+}
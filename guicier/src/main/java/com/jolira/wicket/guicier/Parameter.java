@@ -19,6 +19,10 @@ import org.apache.wicket.util.convert.IConverter;
 /**
  * Identifies a particular entry in a {@link PageParameters} object, which is
  * associated with a particular parameter.
+ * <p>
+ * Fields annotated using this annotation are set after the page has been
+ * constructed, so they are not available in the constructor. Optional fields
+ * keep their value if the parameter is missing.
  * 
  * @author jfk
  * @see PageParameters
@@ -27,6 +31,20 @@ import org.apache.wicket.util.convert.IConverter;
 @Retention(RUNTIME)
 @Documented
 public @interface Parameter {
+    /**
+     * The name of the optional {@code int} binding that sets the default
+     * {@link #maxValues()} of the application. Without it, or if it is
+     * negative, the number of values is not limited.
+     */
+    String MAX_VALUES = "guicier.parameter.maxValues";
+
+    /**
+     * The name of the optional {@code int} binding that sets the default
+     * {@link #maxLength()} of the application. Without it, or if it is
+     * negative, the length of the values is not limited.
+     */
+    String MAX_LENGTH = "guicier.parameter.maxLength";
+
     public static class NoConverter implements IConverter<Void> {
         private static final long serialVersionUID = -8277917810456187685L;
 
@@ -46,6 +64,23 @@ public @interface Parameter {
      */
     Class<? extends IConverter<?>> converter() default NoConverter.class;
 
+    /**
+     * Specifies the maximum length of each value. Longer values are rejected
+     * before they are verified or converted. Negative values select the
+     * default of the application, which is bound using {@link #MAX_LENGTH};
+     * {@link Integer#MAX_VALUE} disables the limit.
+     */
+    int maxLength() default -1;
+
+    /**
+     * Specifies the maximum number of values passed for this parameter. If
+     * there are more, they are rejected before any of them is copied,
+     * verified or converted. Negative values select the default of the
+     * application, which is bound using {@link #MAX_VALUES};
+     * {@link Integer#MAX_VALUE} disables the limit.
+     */
+    int maxValues() default -1;
+
     /**
      * Specifies whether this parameter must be present in the
      * {@link PageParameters} list.
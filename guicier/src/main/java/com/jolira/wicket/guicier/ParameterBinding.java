@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.util.convert.IConverter;
+
+import com.google.inject.TypeLiteral;
+
+/**
+ * Decodes the value of one {@link Parameter} annotated constructor argument or
+ * field.
+ * The converter and the verifier are resolved once, when the binding is
+ * created.
+ * 
+ * @author jfk
+ * @see GeneratedPageMaker
+ * @since 2.5
+ */
+public final class ParameterBinding {
+    private final Guicier guicier;
+    private final Parameter param;
+    private final Class<?> type;
+    private final Type genericType;
+    private final IConverter<?> converter;
+    private final Verifier verifier;
+    private final CollectionType collectionType;
+
+    /**
+     * Converts the values of {@link javax.inject.Provider} typed parameters,
+     * which are converted on demand; {@code null} for all other parameters.
+     */
+    private final ParameterBinding deferred;
+
+    ParameterBinding(final Guicier guicier, final Parameter param, final Class<?> type) {
+        this(guicier, param, type, type);
+    }
+
+    ParameterBinding(final Guicier guicier, final Parameter param, final Class<?> type, final Type genericType) {
+        this(guicier, param, type, genericType, guicier.getVerifier(param));
+    }
+
+    private ParameterBinding(final Guicier guicier, final Parameter param, final Class<?> type,
+            final Type genericType, final Verifier verifier) {
+        this.guicier = guicier;
+        this.param = param;
+        this.type = type;
+        this.genericType = genericType;
+        this.verifier = verifier;
+
+        if (javax.inject.Provider.class.equals(type) || com.google.inject.Provider.class.equals(type)) {
+            deferred = getDeferred(guicier, param, getProvidedType(genericType));
+            collectionType = null;
+            converter = null;
+            return;
+        }
+
+        this.deferred = null;
+        this.collectionType = CollectionType.get(type, genericType);
+        this.converter = guicier.findConverter(param, collectionType != null ? collectionType.getElementType()
+                : type);
+    }
+
+    /**
+     * Creates the binding converting the values handed to a
+     * {@link LazyParameter}.
+     * 
+     * @param guicier
+     *            used to convert the values
+     * @param param
+     *            the parameter
+     * @param providedType
+     *            the type of the values returned by the provider
+     * @return the binding
+     */
+    static ParameterBinding getDeferred(final Guicier guicier, final Parameter param, final Type providedType) {
+        final Class<?> providedClass = providedType instanceof ParameterizedType
+                ? (Class<?>) ((ParameterizedType) providedType).getRawType() : (Class<?>) providedType;
+
+        // the values are verified before they are handed to the provider
+        return new ParameterBinding(guicier, param, providedClass, providedType, Verifier.get(null));
+    }
+
+    private static Type getProvidedType(final Type genericType) {
+        if (!(genericType instanceof ParameterizedType)) {
+            return String.class;
+        }
+
+        final Type providedType = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+
+        if (providedType instanceof Class || providedType instanceof ParameterizedType) {
+            // the canonical types of Guice are serializable, like the providers
+            return TypeLiteral.get(providedType).getType();
+        }
+
+        throw new WicketRuntimeException("cannot determine the provided type of " + genericType);
+    }
+
+    /**
+     * @return the name of the parameter
+     */
+    String getName() {
+        return param.value();
+    }
+
+    /**
+     * @return {@code true} if the parameter does not have to be present
+     */
+    boolean isOptional() {
+        return param.optional();
+    }
+
+    /**
+     * Checks if the parameter was passed without allocating any objects.
+     * 
+     * @param parameters
+     *            the parameters passed to the page (may be {@code null})
+     * @return {@code true} if there is at least one value
+     */
+    boolean isPresent(final PageParameters parameters) {
+        return parameters != null && parameters.getPosition(param.value()) >= 0;
+    }
+
+    @Override
+    public String toString() {
+        final String name = deferred != null ? type.getName() + "<" + deferred.type.getName() + ">"
+                : collectionType != null ? collectionType.toString() : type.getName();
+
+        return param + " of type " + name;
+    }
+
+    /**
+     * Decodes the value.
+     * 
+     * @param parameters
+     *            the parameters passed to the page
+     * @param cleansed
+     *            the parameters to which the verified values are added;
+     *            {@code null} if they are not passed to the page
+     * @return the value to be passed to the constructor
+     */
+    public Object get(final PageParameters parameters, final PageParameters cleansed) {
+        if (deferred != null) {
+            return new LazyParameter(deferred, param, deferred.genericType,
+                    guicier.verify(parameters, param, verifier, cleansed));
+        }
+
+        if (collectionType != null) {
+            return guicier.getCollection(parameters, param, collectionType, converter, verifier, cleansed);
+        }
+
+        return guicier.get(parameters, param, type, converter, verifier, cleansed, false);
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+/**
+ * Converts the values of {@link Parameter}s without going through
+ * {@link org.apache.wicket.util.convert.IConverter}, which always works on
+ * whole strings and boxed values. Values are parsed from a region of a
+ * {@link CharSequence}, primitive values are returned as primitives, and
+ * values are encoded by appending them to a {@link StringBuilder}. Values are
+ * always parsed and encoded the same way, independent of the locale.
+ * <p>
+ * Converters that implement this interface are preferred by {@link Guicier}.
+ * As {@link Parameter#converter()} has to be an
+ * {@link org.apache.wicket.util.convert.IConverter}, converters usually extend
+ * {@link AbstractParameterConverter}, which implements both interfaces.
+ *
+ * @author jfk
+ * @since 2.5
+ * @param <T>
+ *            the type of the values
+ */
+public interface ParameterConverter<T> {
+    /**
+     * Encodes a value.
+     *
+     * @param buf
+     *            the buffer to which the value is appended
+     * @param value
+     *            the value (never {@code null})
+     */
+    void append(StringBuilder buf, T value);
+
+    /**
+     * Parses a value.
+     *
+     * @param value
+     *            the characters
+     * @param start
+     *            the index of the first character of the value
+     * @param end
+     *            the index after the last character of the value
+     * @return the value
+     * @throws RuntimeException
+     *             if the value is malformed, such as
+     *             {@link AbstractParameterConverter#invalid()}
+     */
+    T parse(CharSequence value, int start, int end);
+
+    /**
+     * Parses a value of a {@code boolean} parameter.
+     *
+     * @see #parse(CharSequence, int, int)
+     */
+    boolean parseBoolean(CharSequence value, int start, int end);
+
+    /**
+     * Parses a value of a {@code double} parameter.
+     *
+     * @see #parse(CharSequence, int, int)
+     */
+    double parseDouble(CharSequence value, int start, int end);
+
+    /**
+     * Parses a value of a {@code float} parameter.
+     *
+     * @see #parse(CharSequence, int, int)
+     */
+    float parseFloat(CharSequence value, int start, int end);
+
+    /**
+     * Parses a value of an {@code int} parameter.
+     *
+     * @see #parse(CharSequence, int, int)
+     */
+    int parseInt(CharSequence value, int start, int end);
+
+    /**
+     * Parses a value of a {@code long} parameter.
+     *
+     * @see #parse(CharSequence, int, int)
+     */
+    long parseLong(CharSequence value, int start, int end);
+}
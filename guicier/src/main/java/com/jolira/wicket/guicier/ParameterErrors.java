@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+import java.util.Arrays;
+
+/**
+ * The values that failed verification or conversion while the parameters of
+ * a page, component or resource were decoded. Failures are collected instead
+ * of being thrown one by one, so a malformed request costs a single exception
+ * without a stack trace, which is thrown once all arguments have been
+ * decoded.
+ * <p>
+ * The instance collecting the errors of the current thread is only kept
+ * while the parameters are decoded and is dropped from its thread once the
+ * outermost instance is closed, so no thread of a container keeps the classes
+ * of a web application that has been undeployed. Instances returned by
+ * {@link InvalidParametersException#getErrors()} are copies and can be kept.
+ *
+ * @author jfk
+ * @since 2.5
+ */
+public final class ParameterErrors {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private static final ThreadLocal<ParameterErrors> CURRENT = new ThreadLocal<ParameterErrors>();
+
+    /**
+     * Returns the errors collected by the current thread.
+     *
+     * @return the errors or {@code null} if the thread is not decoding
+     *         parameters, in which case failures are thrown right away
+     */
+    static ParameterErrors current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Starts collecting errors. If the thread is already collecting errors,
+     * for instance because a provider creates a component while the arguments
+     * of a page are being decoded, a nested instance is used until it is
+     * closed.
+     *
+     * @return the errors; to be {@link #close() closed} once the arguments
+     *         have been decoded
+     */
+    static ParameterErrors open() {
+        final ParameterErrors errors = new ParameterErrors(CURRENT.get());
+
+        CURRENT.set(errors);
+
+        return errors;
+    }
+
+    private final ParameterErrors outer;
+    private int size;
+    private String[] names;
+    private String[] values;
+    private String[] reasons;
+
+    private ParameterErrors(final ParameterErrors outer) {
+        this.outer = outer;
+    }
+
+    /**
+     * Records a value that was rejected. A value that was already rejected,
+     * for instance because a constructor argument and a field share the
+     * parameter, is only recorded once.
+     *
+     * @param name
+     *            the name of the parameter
+     * @param value
+     *            the rejected value
+     * @param reason
+     *            why it was rejected
+     */
+    void add(final String name, final String value, final String reason) {
+        for (int idx = 0; idx < size; idx++) {
+            if (name.equals(names[idx]) && (value == null ? values[idx] == null : value.equals(values[idx]))) {
+                return;
+            }
+        }
+
+        if (names == null) {
+            names = new String[INITIAL_CAPACITY];
+            values = new String[INITIAL_CAPACITY];
+            reasons = new String[INITIAL_CAPACITY];
+        } else if (size == names.length) {
+            final int capacity = size * 2;
+
+            names = Arrays.copyOf(names, capacity);
+            values = Arrays.copyOf(values, capacity);
+            reasons = Arrays.copyOf(reasons, capacity);
+        }
+
+        names[size] = name;
+        values[size] = value;
+        reasons[size] = reason;
+        size++;
+    }
+
+    /**
+     * Stops collecting errors. The instance that was collecting them before
+     * this one was opened becomes current again; if there is none, nothing is
+     * left behind in the thread.
+     */
+    void close() {
+        if (outer == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(outer);
+        }
+    }
+
+    /**
+     * @return a copy that is not reused
+     */
+    ParameterErrors copy() {
+        final ParameterErrors copy = new ParameterErrors(null);
+
+        copy.size = size;
+        copy.names = Arrays.copyOf(names, size);
+        copy.values = Arrays.copyOf(values, size);
+        copy.reasons = Arrays.copyOf(reasons, size);
+
+        return copy;
+    }
+
+    /**
+     * @param idx
+     *            the index of the error
+     * @return the name of the parameter
+     */
+    public String getName(final int idx) {
+        checkIndex(idx);
+
+        return names[idx];
+    }
+
+    /**
+     * @param idx
+     *            the index of the error
+     * @return why the value was rejected
+     */
+    public String getReason(final int idx) {
+        checkIndex(idx);
+
+        return reasons[idx];
+    }
+
+    /**
+     * @param idx
+     *            the index of the error
+     * @return the rejected value; {@code null} if the parameter was rejected
+     *         as a whole, for instance because it had too many values
+     */
+    public String getValue(final int idx) {
+        checkIndex(idx);
+
+        return values[idx];
+    }
+
+    /**
+     * @return {@code true} if at least one value was rejected
+     */
+    public boolean hasErrors() {
+        return size > 0;
+    }
+
+    /**
+     * @return the number of rejected values
+     */
+    public int size() {
+        return size;
+    }
+
+    private void checkIndex(final int idx) {
+        if (idx < 0 || idx >= size) {
+            throw new IndexOutOfBoundsException(idx + " of " + size);
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buf = new StringBuilder();
+
+        for (int idx = 0; idx < size; idx++) {
+            if (idx > 0) {
+                buf.append(", ");
+            }
+
+            buf.append(names[idx]).append(": ").append(reasons[idx]);
+        }
+
+        return buf.toString();
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+
+/**
+ * Sets the {@link Parameter} annotated fields of newly created pages. The
+ * fields are set after the constructor has returned, so they cannot be used
+ * by the constructor itself; a constructor that takes {@link PageParameters}
+ * finds their verified values there instead. The converters and setters are
+ * resolved once per page class.
+ * <p>
+ * Optional fields are left alone if the parameter is missing, so they keep
+ * the value assigned by the page. A missing required parameter rejects the
+ * request just like a missing constructor argument.
+ *
+ * @author jfk
+ * @since 2.5
+ */
+final class ParameterFields {
+    /**
+     * Marks a field whose parameter is missing in the values returned by
+     * {@link #decode(PageParameters, PageParameters)}.
+     */
+    private static final Object ABSENT = new Object();
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    /**
+     * Finds the {@link Parameter} annotated fields of a class and its
+     * superclasses.
+     *
+     * @param guicier
+     *            used to decode the values
+     * @param type
+     *            the page class
+     * @param rejection
+     *            thrown if a required parameter is missing
+     * @return the fields or {@code null} if there are none
+     */
+    static ParameterFields get(final Guicier guicier, final Class<?> type, final PageRejectedException rejection) {
+        final List<ParameterBinding> bindings = new ArrayList<ParameterBinding>();
+        final List<MethodHandle> setters = new ArrayList<MethodHandle>();
+
+        for (Class<?> cls = type; cls != null; cls = cls.getSuperclass()) {
+            for (final Field field : cls.getDeclaredFields()) {
+                final Parameter param = field.getAnnotation(Parameter.class);
+
+                if (param == null) {
+                    continue;
+                }
+
+                final int modifiers = field.getModifiers();
+
+                if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers)) {
+                    throw new WicketRuntimeException("@Parameter field " + field + " must not be static or final");
+                }
+
+                bindings.add(new ParameterBinding(guicier, param, field.getType(), field.getGenericType()));
+                setters.add(getSetter(field));
+            }
+        }
+
+        if (bindings.isEmpty()) {
+            return null;
+        }
+
+        final int size = bindings.size();
+
+        return new ParameterFields(guicier, rejection, bindings.toArray(new ParameterBinding[size]),
+                setters.toArray(new MethodHandle[size]));
+    }
+
+    private static MethodHandle getSetter(final Field field) {
+        field.setAccessible(true);
+
+        try {
+            return MethodHandles.lookup().unreflectSetter(field).asType(SETTER_TYPE);
+        } catch (final IllegalAccessException e) {
+            throw new WicketRuntimeException(e);
+        }
+    }
+
+    private final Guicier guicier;
+    private final ParameterBinding[] bindings;
+    private final MethodHandle[] setters;
+    private final PageRejectedException rejection;
+
+    private ParameterFields(final Guicier guicier, final PageRejectedException rejection,
+            final ParameterBinding[] bindings, final MethodHandle[] setters) {
+        this.guicier = guicier;
+        this.bindings = bindings;
+        this.setters = setters;
+        this.rejection = rejection;
+    }
+
+    /**
+     * Rejects the parameters if a required field has no value. Called before
+     * the page is constructed, so a request that is going to be rejected does
+     * not run the constructor or the providers of its arguments.
+     *
+     * @param parameters
+     *            the parameters passed to the page (may be {@code null})
+     */
+    void checkPresent(final PageParameters parameters) {
+        for (final ParameterBinding binding : bindings) {
+            if (!binding.isOptional() && !binding.isPresent(parameters)) {
+                throw rejection.reject(parameters);
+            }
+        }
+    }
+
+    /**
+     * Decodes the values of the fields. Called while the arguments of the
+     * constructor are decoded, so rejected values are reported together with
+     * the rejected arguments, and the cleansed parameters passed to the
+     * constructor already contain the values of the fields.
+     *
+     * @param parameters
+     *            the parameters passed to the page (may be {@code null})
+     * @param cleansed
+     *            the parameters to which the verified values are added;
+     *            {@code null} if they are not passed to the page
+     * @return the values, to be passed to {@link #set(Object, Object[])}
+     */
+    Object[] decode(final PageParameters parameters, final PageParameters cleansed) {
+        final Object[] values = new Object[bindings.length];
+
+        for (int idx = 0; idx < bindings.length; idx++) {
+            final ParameterBinding binding = bindings[idx];
+
+            if (!binding.isPresent(parameters)) {
+                if (!binding.isOptional()) {
+                    throw rejection.reject(parameters);
+                }
+
+                values[idx] = ABSENT;
+                continue;
+            }
+
+            values[idx] = binding.get(parameters, cleansed);
+        }
+
+        return values;
+    }
+
+    /**
+     * Sets the fields of a newly created page. Optional fields whose
+     * parameter is missing keep their value.
+     *
+     * @param page
+     *            the page
+     * @param values
+     *            the values returned by
+     *            {@link #decode(PageParameters, PageParameters)}
+     */
+    void set(final Object page, final Object[] values) {
+        for (int idx = 0; idx < bindings.length; idx++) {
+            final Object value = values[idx];
+
+            if (value == ABSENT) {
+                continue;
+            }
+
+            try {
+                setters[idx].invokeExact(page, value);
+            } catch (final Throwable e) {
+                throw new WicketRuntimeException("cannot set " + bindings[idx], e);
+            }
+        }
+    }
+
+    /**
+     * Decodes the values of the fields and sets them.
+     *
+     * @param page
+     *            the page
+     * @param parameters
+     *            the parameters passed to the page (may be {@code null})
+     */
+    void inject(final Object page, final PageParameters parameters) {
+        final ParameterErrors errors = ParameterErrors.open();
+        final Object[] values;
+
+        try {
+            values = decode(parameters, null);
+
+            // the page is discarded if any value was rejected
+            guicier.checkErrors(page.getClass(), errors);
+        } finally {
+            errors.close();
+        }
+
+        set(page, values);
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Constructor;
+
+import javax.inject.Inject;
+
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.request.resource.IResource;
+
+import com.google.inject.Injector;
+
+/**
+ * The compiled plan for the constructor of a resource class: either the
+ * {@code @Inject} annotated constructor or the default constructor. Arguments
+ * annotated using {@link Parameter} are decoded from the parameters of the
+ * request, {@link PageParameters} arguments receive the parameters of the
+ * request, and all other arguments are provided by Guice. Requests missing a
+ * required parameter are rejected like requests with invalid values.
+ *
+ * @author jfk
+ * @since 2.5
+ * @param <R>
+ *            the resource type
+ */
+final class ResourceConstructor<R extends IResource> {
+    @SuppressWarnings("unchecked")
+    private static <R> Constructor<R> getConstructor(final Class<R> type) {
+        for (final Constructor<?> constructor : type.getDeclaredConstructors()) {
+            if (constructor.isAnnotationPresent(Inject.class)
+                    || constructor.isAnnotationPresent(com.google.inject.Inject.class)) {
+                return (Constructor<R>) constructor;
+            }
+        }
+
+        try {
+            return type.getDeclaredConstructor();
+        } catch (final NoSuchMethodException e) {
+            throw new WicketRuntimeException("no @Inject annotated or default constructor found for " + type, e);
+        }
+    }
+
+    private final Class<R> type;
+    private final MethodHandle instantiator;
+    private final ConstructorArguments constructorArguments;
+    private final MembersInjection membersInjection;
+
+    ResourceConstructor(final Injector injector, final Guicier guicier, final Class<R> type) {
+        final Constructor<R> constructor = getConstructor(type);
+
+        this.type = type;
+        constructorArguments = new ConstructorArguments(injector, guicier, constructor);
+
+        if (constructorArguments.getArgumentCount() > 0) {
+            throw new WicketRuntimeException("resources cannot take @Argument annotated arguments: " + type);
+        }
+
+        instantiator = PageConstructor.getInstantiator(constructor, IResource.class);
+        membersInjection = new MembersInjection(injector, type);
+    }
+
+    /**
+     * Creates a resource.
+     *
+     * @param parameters
+     *            the parameters of the request (may be {@code null})
+     * @return the resource
+     */
+    R create(final PageParameters parameters) {
+        final Object[] args = constructorArguments.get(parameters, null);
+        final IResource resource;
+
+        try {
+            resource = (IResource) instantiator.invokeExact(args);
+        } catch (final Throwable e) {
+            throw GeneratedPageMaker.wrap(e);
+        }
+
+        membersInjection.injectMembers(resource);
+
+        return type.cast(resource);
+    }
+
+    /**
+     * @return {@code true} if the constructor only takes Guice provided
+     *         arguments, so one instance can serve all requests
+     */
+    boolean isRequestIndependent() {
+        return constructorArguments.isRequestIndependent();
+    }
+}
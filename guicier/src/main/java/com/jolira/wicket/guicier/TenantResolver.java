@@ -0,0 +1,35 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+import com.google.inject.Injector;
+
+/**
+ * Selects the injector of the tenant the current request belongs to, which
+ * allows one application to serve several tenants. Bind an implementation in
+ * the injector of the {@link GuicierWebApplication} to enable it.
+ * <p>
+ * The tenant injectors have to be child injectors of the application's
+ * injector, created once per tenant using
+ * {@link Injector#createChildInjector(com.google.inject.Module...)} and then
+ * reused. They should only contain the bindings that differ between tenants.
+ * The analysis of the page classes is shared by all tenants; only the
+ * providers of the constructor arguments and the member injection are looked
+ * up per tenant.
+ *
+ * @author jfk
+ * @since 2.5
+ */
+public interface TenantResolver {
+    /**
+     * Called for every page and component created during a request, with the
+     * Wicket request cycle of the request set up.
+     *
+     * @return the injector of the tenant or {@code null} to use the injector of
+     *         the application
+     */
+    Injector getInjector();
+}
@@ -0,0 +1,356 @@
+/**
+ * Copyright (c) 2011 jolira. All rights reserved. This program and the accompanying materials are made available under
+ * the terms of the GNU Public License 2.0 which is available at http://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ */
+
+package com.jolira.wicket.guicier;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Checks the values of a parameter against the {@link Parameter#verifier()}
+ * and knows the {@link Parameter#maxValues() number} and
+ * {@link Parameter#maxLength() length} of the values that are accepted at
+ * all. Verifiers are compiled once per pattern. Patterns that consist of a single
+ * character class followed by {@code *} or {@code +}, such as the default
+ * {@code [^<>\n\r\f]*}, are checked by a loop over the characters of the value
+ * instead of a regular expression, which does not allocate anything.
+ *
+ * @author jfk
+ * @since 2.5
+ */
+abstract class Verifier {
+    /**
+     * Checks a value using a single character class.
+     */
+    private static final class CharClassVerifier extends Verifier {
+        private static final int ASCII = 128;
+
+        private final boolean[] ascii = new boolean[ASCII];
+        private final char[] from;
+        private final char[] to;
+        private final boolean negated;
+        private final boolean required;
+
+        CharClassVerifier(final String pattern, final boolean negated, final boolean required, final char[] from,
+                final char[] to) {
+            super(pattern);
+
+            this.negated = negated;
+            this.required = required;
+            this.from = from;
+            this.to = to;
+
+            for (int idx = 0; idx < from.length; idx++) {
+                for (int c = from[idx]; c <= to[idx] && c < ASCII; c++) {
+                    ascii[c] = true;
+                }
+            }
+        }
+
+        private boolean contains(final char c) {
+            if (c < ASCII) {
+                return ascii[c];
+            }
+
+            for (int idx = 0; idx < from.length; idx++) {
+                if (c >= from[idx] && c <= to[idx]) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        boolean matches(final String value) {
+            final int length = value.length();
+
+            if (required && length == 0) {
+                return false;
+            }
+
+            for (int idx = 0; idx < length; idx++) {
+                if (contains(value.charAt(idx)) == negated) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Checks a value using a compiled regular expression.
+     */
+    private static final class RegexVerifier extends Verifier {
+        private final Pattern compiled;
+
+        RegexVerifier(final String pattern) {
+            super(pattern);
+
+            compiled = Pattern.compile(pattern);
+        }
+
+        @Override
+        boolean matches(final String value) {
+            return compiled.matcher(value).matches();
+        }
+    }
+
+    /**
+     * Applies limits to the values checked by another verifier.
+     */
+    private static final class LimitedVerifier extends Verifier {
+        private final Verifier verifier;
+        private final int maxValues;
+        private final int maxLength;
+
+        LimitedVerifier(final Verifier verifier, final int maxValues, final int maxLength) {
+            super(verifier.toString());
+
+            this.verifier = verifier;
+            this.maxValues = maxValues;
+            this.maxLength = maxLength;
+        }
+
+        @Override
+        int getMaxLength() {
+            return maxLength;
+        }
+
+        @Override
+        int getMaxValues() {
+            return maxValues;
+        }
+
+        @Override
+        boolean matches(final String value) {
+            return verifier.matches(value);
+        }
+    }
+
+    private static final Verifier NONE = new Verifier("") {
+        @Override
+        boolean matches(final String value) {
+            return true;
+        }
+    };
+
+    private static final ConcurrentMap<String, Verifier> VERIFIERS = new ConcurrentHashMap<String, Verifier>();
+
+    private static final ConcurrentMap<String, Verifier> LIMITED = new ConcurrentHashMap<String, Verifier>();
+
+    private static Verifier compile(final String pattern) {
+        final Verifier scanner = parseCharClass(pattern);
+
+        return scanner != null ? scanner : new RegexVerifier(pattern);
+    }
+
+    /**
+     * Returns the verifier for a pattern, compiling it if it has not been used
+     * before.
+     *
+     * @param pattern
+     *            the pattern (may be {@code null} or empty)
+     * @return the verifier
+     */
+    static Verifier get(final String pattern) {
+        if (pattern == null || pattern.isEmpty()) {
+            return NONE;
+        }
+
+        final Verifier verifier = VERIFIERS.get(pattern);
+
+        if (verifier != null) {
+            return verifier;
+        }
+
+        final Verifier _verifier = compile(pattern);
+        final Verifier existing = VERIFIERS.putIfAbsent(pattern, _verifier);
+
+        return existing != null ? existing : _verifier;
+    }
+
+    /**
+     * Returns the verifier for a pattern that also limits the number and the
+     * length of the values.
+     *
+     * @param pattern
+     *            the pattern (may be {@code null} or empty)
+     * @param maxValues
+     *            the maximum number of values; {@link Integer#MAX_VALUE} for
+     *            no limit
+     * @param maxLength
+     *            the maximum length of each value; {@link Integer#MAX_VALUE}
+     *            for no limit
+     * @return the verifier
+     */
+    static Verifier get(final String pattern, final int maxValues, final int maxLength) {
+        final Verifier verifier = get(pattern);
+
+        if (maxValues == Integer.MAX_VALUE && maxLength == Integer.MAX_VALUE) {
+            return verifier;
+        }
+
+        final String key = maxValues + ":" + maxLength + ":" + verifier;
+        final Verifier limited = LIMITED.get(key);
+
+        if (limited != null) {
+            return limited;
+        }
+
+        final Verifier _limited = new LimitedVerifier(verifier, maxValues, maxLength);
+        final Verifier existing = LIMITED.putIfAbsent(key, _limited);
+
+        return existing != null ? existing : _limited;
+    }
+
+    /**
+     * Parses a pattern of the form {@code [...]*}, {@code [^...]*},
+     * {@code [...]+} or {@code [^...]+}, where the class only contains literal
+     * characters, ranges and the escapes {@code \n}, {@code \r}, {@code \f},
+     * {@code \t} and escaped punctuation.
+     *
+     * @return the verifier or {@code null} if the pattern is not that simple
+     */
+    private static Verifier parseCharClass(final String pattern) {
+        final int length = pattern.length();
+
+        if (length < 4 || pattern.charAt(0) != '[' || pattern.charAt(length - 2) != ']') {
+            return null;
+        }
+
+        final char quantifier = pattern.charAt(length - 1);
+
+        if (quantifier != '*' && quantifier != '+') {
+            return null;
+        }
+
+        final boolean negated = pattern.charAt(1) == '^';
+        final int end = length - 2;
+        final char[] from = new char[end];
+        final char[] to = new char[end];
+        int count = 0;
+        int idx = negated ? 2 : 1;
+
+        if (idx >= end) {
+            return null; // empty classes are not valid
+        }
+
+        while (idx < end) {
+            final int first = parseChar(pattern, idx, end);
+
+            if (first < 0) {
+                return null;
+            }
+
+            idx += pattern.charAt(idx) == '\\' ? 2 : 1;
+
+            char last = (char) first;
+
+            if (idx + 1 < end && pattern.charAt(idx) == '-') {
+                final int _last = parseChar(pattern, idx + 1, end);
+
+                if (_last < first) {
+                    return null;
+                }
+
+                last = (char) _last;
+                idx += pattern.charAt(idx + 1) == '\\' ? 3 : 2;
+            }
+
+            from[count] = (char) first;
+            to[count] = last;
+            count++;
+        }
+
+        final char[] _from = new char[count];
+        final char[] _to = new char[count];
+
+        System.arraycopy(from, 0, _from, 0, count);
+        System.arraycopy(to, 0, _to, 0, count);
+
+        return new CharClassVerifier(pattern, negated, quantifier == '+', _from, _to);
+    }
+
+    /**
+     * @return the character at the position or {@code -1} if it is not a
+     *         literal character or a supported escape
+     */
+    private static int parseChar(final String pattern, final int idx, final int end) {
+        final char c = pattern.charAt(idx);
+
+        if (c != '\\') {
+            if (c == '[' || c == ']' || c == '&' || Character.isSurrogate(c)) {
+                return -1;
+            }
+
+            return c;
+        }
+
+        if (idx + 1 >= end) {
+            return -1;
+        }
+
+        final char escaped = pattern.charAt(idx + 1);
+
+        switch (escaped) {
+        case 'n':
+            return '\n';
+        case 'r':
+            return '\r';
+        case 'f':
+            return '\f';
+        case 't':
+            return '\t';
+        default:
+            break;
+        }
+
+        // escaped punctuation stands for itself; letters and digits are classes
+        if (escaped < Verifier.CharClassVerifier.ASCII && !Character.isLetterOrDigit(escaped)) {
+            return escaped;
+        }
+
+        return -1;
+    }
+
+    private final String pattern;
+
+    Verifier(final String pattern) {
+        this.pattern = pattern;
+    }
+
+    /**
+     * @return the maximum length of a value; {@link Integer#MAX_VALUE} if
+     *         there is no limit
+     */
+    int getMaxLength() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return the maximum number of values; {@link Integer#MAX_VALUE} if there
+     *         is no limit
+     */
+    int getMaxValues() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Checks a value.
+     *
+     * @param value
+     *            the value
+     * @return {@code true} if the value is acceptable
+     */
+    abstract boolean matches(String value);
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
@@ -3,20 +3,35 @@ package com.jolira.wicket.guicier;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.lang.reflect.InvocationTargetException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.wicket.WicketRuntimeException;
 import org.apache.wicket.markup.html.WebPage;
 import org.apache.wicket.request.component.IRequestablePage;
+import org.apache.wicket.request.cycle.RequestCycle;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.util.convert.IConverter;
 import org.apache.wicket.util.convert.converter.IntegerConverter;
@@ -27,14 +42,19 @@ import org.junit.Test;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Binder;
+import com.google.inject.ConfigurationException;
 import com.google.inject.Guice;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
+import com.google.inject.Key;
 import com.google.inject.Module;
+import com.google.inject.Provider;
+import com.google.inject.Stage;
 import com.google.inject.TypeLiteral;
 import com.google.inject.multibindings.Multibinder;
 import com.google.inject.name.Named;
 import com.google.inject.name.Names;
+import com.google.inject.servlet.ServletScopes;
 
 /**
  * Test something
@@ -63,6 +83,13 @@ public class GuicierPageFactoryTest {
         // nothing
     }
 
+    static final class ScopedJolira implements IJolira {
+        @Inject
+        ScopedJolira(@Named("second") final String second) {
+            assertNotNull(second);
+        }
+    }
+
     /**
      * A simple test page with javax
      */
@@ -207,6 +234,236 @@ public class GuicierPageFactoryTest {
         }
     }
 
+    /**
+     * Test overloaded constructors
+     */
+    public static class TestPageOverloaded extends WebPage {
+        private static final long serialVersionUID = 8533588453049242815L;
+
+        static String selected;
+
+        @Inject
+        TestPageOverloaded(@Parameter("id") final long id) {
+            selected = "id";
+        }
+
+        @Inject
+        TestPageOverloaded(@Parameter("id") final long id, @Parameter(value = "offset", optional = true) final int offset,
+                @Parameter(value = "limit", optional = true) final int limit) {
+            selected = "id-offset-limit";
+        }
+
+        @Inject
+        TestPageOverloaded(@Parameter("name") final String name) {
+            selected = "name";
+        }
+    }
+
+    /**
+     * Test member injection
+     */
+    public static class TestPageMemberInjected extends WebPage {
+        private static final long serialVersionUID = 1045688568816245483L;
+
+        @Inject
+        transient Injector injector;
+
+        @Inject
+        TestPageMemberInjected(@Parameter("offset") final int offset) {
+            assertEquals(15, offset);
+        }
+    }
+
+    /**
+     * A page with parameter fields
+     */
+    public static class TestPageFields extends WebPage {
+        private static final long serialVersionUID = -4191684467746529485L;
+        static final AtomicInteger CREATED = new AtomicInteger();
+
+        @Parameter("id")
+        long id;
+
+        @Parameter(value = "name", optional = true)
+        String name = "none";
+
+        @Parameter(value = "state", optional = true)
+        State state;
+
+        TestPageFields() {
+            assertEquals(0, id);
+            CREATED.incrementAndGet();
+        }
+    }
+
+    /**
+     * A page with a parameter field that takes the cleansed parameters
+     */
+    public static class TestPageFieldsCleansed extends WebPage {
+        private static final long serialVersionUID = 4632918564220810828L;
+
+        @Parameter(value = "name", optional = true)
+        String name;
+
+        final String cleansedName;
+
+        @Inject
+        TestPageFieldsCleansed(final PageParameters uncleansed, @Parameter("id") final long id,
+                final PageParameters cleansed) {
+            assertNull(name);
+            cleansedName = cleansed.get("name").toString();
+        }
+    }
+
+    /**
+     * A page taking collections
+     */
+    public static class TestPageCollections extends WebPage {
+        private static final long serialVersionUID = 2997138750674225043L;
+
+        final List<Long> ids;
+        final Set<String> names;
+        final EnumSet<State> states;
+
+        @Parameter(value = "states", optional = true)
+        Set<State> stateField;
+
+        @Parameter(value = "sorted", optional = true)
+        SortedSet<Long> sorted;
+
+        @Inject
+        TestPageCollections(@Parameter("ids") final List<Long> ids,
+                @Parameter(value = "names", optional = true) final Set<String> names,
+                @Parameter(value = "states", optional = true) final EnumSet<State> states) {
+            this.ids = ids;
+            this.names = names;
+            this.states = states;
+        }
+    }
+
+    /**
+     * Converts hexadecimal numbers without allocating anything
+     */
+    public static class HexConverter extends AbstractParameterConverter<Integer> {
+        private static final long serialVersionUID = -3199132103452330921L;
+
+        @Override
+        public void append(final StringBuilder buf, final Integer value) {
+            buf.append(Integer.toHexString(value.intValue()));
+        }
+
+        @Override
+        public Integer parse(final CharSequence value, final int start, final int end) {
+            return Integer.valueOf(parseInt(value, start, end));
+        }
+
+        @Override
+        public int parseInt(final CharSequence value, final int start, final int end) {
+            if (start == end || end - start > 7) {
+                throw invalid();
+            }
+
+            int result = 0;
+
+            for (int idx = start; idx < end; idx++) {
+                final int digit = Character.digit(value.charAt(idx), 16);
+
+                if (digit < 0) {
+                    throw invalid();
+                }
+
+                result = result * 16 + digit;
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * A page with parameters that use a {@link ParameterConverter}
+     */
+    public static class TestPageHex extends WebPage {
+        private static final long serialVersionUID = -4501199143422203179L;
+
+        final int color;
+        final int[] colors;
+
+        @Inject
+        TestPageHex(@Parameter(value = "color", converter = HexConverter.class) final int color,
+                @Parameter(value = "colors", optional = true, converter = HexConverter.class) final int[] colors) {
+            this.color = color;
+            this.colors = colors;
+        }
+    }
+
+    /**
+     * A page with parameters that limit their values
+     */
+    public static class TestPageLimits extends WebPage {
+        private static final long serialVersionUID = -1769044761530272541L;
+
+        final int[] ids;
+        final String name;
+
+        @Inject
+        TestPageLimits(@Parameter(value = "ids", maxValues = 2) final int[] ids,
+                @Parameter(value = "name", optional = true, maxLength = 5) final String name) {
+            this.ids = ids;
+            this.name = name;
+        }
+    }
+
+    /**
+     * A page with a parameter that is converted on demand
+     */
+    public static class TestPageLazy extends WebPage {
+        private static final long serialVersionUID = -1054075343095224461L;
+
+        final Provider<Integer> offset;
+        final javax.inject.Provider<List<Long>> ids;
+
+        @Inject
+        TestPageLazy(@Parameter(value = "offset", verifier = "[0-9x]*") final Provider<Integer> offset,
+                @Parameter(value = "ids", optional = true) final javax.inject.Provider<List<Long>> ids) {
+            this.offset = offset;
+            this.ids = ids;
+        }
+    }
+
+    /**
+     * A page with an argument that is only bound by tenants
+     */
+    public static class TestPageTenant extends WebPage {
+        private static final long serialVersionUID = -7102976442170585539L;
+
+        final String tenant;
+
+        @Inject
+        TestPageTenant(@Named("tenant") final String tenant, @Parameter("offset") final int offset) {
+            assertEquals(15, offset);
+            this.tenant = tenant;
+        }
+    }
+
+    /**
+     * A page with providers that are resolved concurrently
+     */
+    public static class TestPageConcurrent extends WebPage {
+        private static final long serialVersionUID = -1500853177278345749L;
+
+        final String first;
+        final String second;
+
+        @Inject
+        @Concurrent
+        TestPageConcurrent(@Named("first") final String first, @Parameter("offset") final int offset,
+                @Named("second") final String second) {
+            assertEquals(15, offset);
+            this.first = first;
+            this.second = second;
+        }
+    }
+
     /**
      * Test something
      */
@@ -582,6 +839,26 @@ public class GuicierPageFactoryTest {
         factory.newPage(TestPageFailOnPurpose.class);
     }
 
+    /**
+     * Exceptions thrown by the page constructor are wrapped just like
+     * {@link java.lang.reflect.Constructor#newInstance(Object...)} would.
+     */
+    @Test
+    public void testErrorHandlingCause() {
+        final Injector injector = Guice.createInjector();
+        final GuicierPageFactory factory = injector.getInstance(GuicierPageFactory.class);
+
+        try {
+            factory.newPage(TestPageFailOnPurpose.class);
+            fail();
+        } catch (final WicketRuntimeException e) {
+            final Throwable cause = e.getCause();
+
+            assertTrue(cause instanceof InvocationTargetException);
+            assertTrue(cause.getCause() instanceof AssertionError);
+        }
+    }
+
     /**
      * Test something
      */
@@ -793,6 +1070,89 @@ public class GuicierPageFactoryTest {
         factory.newPage(TestPage99.class);
     }
 
+    /**
+     * Member injection is skipped for pages without injection points.
+     */
+    @Test
+    public void testMemberInjection() {
+        final Injector injector = Guice.createInjector();
+        final GuicierPageFactory factory = injector.getInstance(GuicierPageFactory.class);
+        final PageParameters params = new PageParameters();
+
+        params.add("offset", "15");
+
+        final TestPageMemberInjected page = (TestPageMemberInjected) factory.newPage(TestPageMemberInjected.class,
+                params);
+
+        assertSame(injector, page.injector);
+        assertFalse(((PageCreatorImpl) factory.getMaker(TestPageMemberInjected.class)).isMemberInjectionSkipped());
+
+        factory.newPage(TestPage6.class, params);
+
+        assertTrue(((PageCreatorImpl) factory.getMaker(TestPage6.class)).isMemberInjectionSkipped());
+    }
+
+    /**
+     * Providers of {@link Concurrent} pages do not wait for each other and
+     * see the request cycle of the calling thread.
+     */
+    @Test
+    public void testConcurrentProviders() {
+        final CountDownLatch latch = new CountDownLatch(2);
+        final Provider<String> slow = new Provider<String>() {
+            @Override
+            public String get() {
+                latch.countDown();
+
+                try {
+                    return latch.await(5, TimeUnit.SECONDS) + ":" + (RequestCycle.get() != null);
+                } catch (final InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        final Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(String.class).annotatedWith(Names.named("first")).toProvider(slow);
+                bind(String.class).annotatedWith(Names.named("second")).toProvider(slow);
+            }
+        });
+        final GuicierPageFactory factory = injector.getInstance(GuicierPageFactory.class);
+        final PageParameters params = new PageParameters();
+
+        params.add("offset", "15");
+
+        final TestPageConcurrent page = (TestPageConcurrent) factory.newPage(TestPageConcurrent.class, params);
+
+        assertEquals("true:true", page.first);
+        assertEquals("true:true", page.second);
+    }
+
+    /**
+     * Objects in the guice-servlet scopes are not resolved concurrently.
+     */
+    @Test
+    public void testConcurrentProvidersServletScoped() {
+        final Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(String.class).annotatedWith(Names.named("first")).toInstance("first");
+                bind(String.class).annotatedWith(Names.named("second")).toProvider(new Provider<String>() {
+                    @Override
+                    public String get() {
+                        return "second";
+                    }
+                }).in(ServletScopes.REQUEST);
+                bind(IJolira.class).to(ScopedJolira.class);
+            }
+        });
+
+        assertFalse(ConcurrentProviders.isServletScoped(injector, Key.get(String.class, Names.named("first"))));
+        assertTrue(ConcurrentProviders.isServletScoped(injector, Key.get(String.class, Names.named("second"))));
+        assertTrue(ConcurrentProviders.isServletScoped(injector, Key.get(IJolira.class)));
+    }
+
     /**
      * Test the {@link Multibinder} injection
      */
@@ -850,6 +1210,56 @@ public class GuicierPageFactoryTest {
         factory.newPage(TestPage0.class, params);
     }
 
+    /**
+     * Concurrent lookups all see the same maker.
+     * 
+     * @throws Exception
+     *             test failed
+     */
+    @Test
+    public void testConcurrentGetMaker() throws Exception {
+        final Injector injector = Guice.createInjector();
+        final GuicierPageFactory factory = injector.getInstance(GuicierPageFactory.class);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final List<Future<PageMaker>> makers = new ArrayList<Future<PageMaker>>();
+
+        try {
+            for (int idx = 0; idx < 64; idx++) {
+                makers.add(executor.submit(new Callable<PageMaker>() {
+                    @Override
+                    public PageMaker call() {
+                        return factory.getMaker(TestPageOverloaded.class);
+                    }
+                }));
+            }
+
+            for (final Future<PageMaker> maker : makers) {
+                assertSame(makers.get(0).get(), maker.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Warming up reports the pages that cannot be created.
+     */
+    @Test
+    public void testWarmUp() {
+        final Injector injector = Guice.createInjector();
+        final GuicierPageFactory factory = injector.getInstance(GuicierPageFactory.class);
+        final int failed = factory.warmUp(
+                Arrays.asList(TestPage6.class.getName(), TestPageOverloaded.class.getName(), "com.jolira.NoSuchPage",
+                        MyTest.class.getName()), getClass().getClassLoader(), 2, true);
+
+        assertEquals(2, failed);
+
+        final PageParameters params = new PageParameters();
+
+        params.add("offset", "15");
+        assertNotNull(factory.newPage(TestPage6.class, params));
+    }
+
     /**
      * Test something
      */
@@ -950,6 +1360,557 @@ public class GuicierPageFactoryTest {
         factory.newPage(TestPage13.class);
     }
 
+    /**
+     * The constructor with the most matching parameters wins.
+     */
+    @Test
+    public void testOverloadedConstructors() {
+        final Injector injector = Guice.createInjector();
+        final GuicierPageFactory factory = injector.getInstance(GuicierPageFactory.class);
+        final PageParameters params = new PageParameters();
+
+        params.add("id", "1");
+        params.add("offset", "2");
+        params.add("limit", "3");
+        factory.newPage(TestPageOverloaded.class, params);
+        assertEquals("id-offset-limit", TestPageOverloaded.selected);
+
+        final PageParameters byName = new PageParameters();
+
+        byName.add("name", "jolira");
+        byName.add("offset", "2");
+        factory.newPage(TestPageOverloaded.class, byName);
+        assertEquals("name", TestPageOverloaded.selected);
+    }
+
+    /**
+     * Test something
+     */
+    @Test(expected = WicketRuntimeException.class)
+    public void testOverloadedConstructorsNoMatch() {
+        final Injector injector = Guice.createInjector();
+        final GuicierPageFactory factory = injector.getInstance(GuicierPageFactory.class);
+        final PageParameters params = new PageParameters();
+
+        params.add("offset", "2");
+        factory.newPage(TestPageOverloaded.class, params);
+    }
+
+    /**
+     * Test collection typed parameters
+     */
+    @Test
+    public void testCollections() {
+        final Injector injector = Guice.createInjector();
+        final GuicierPageFactory factory = injector.getInstance(GuicierPageFactory.class);
+        final PageParameters params = new PageParameters();
+
+        params.add("ids", "3");
+        params.add("ids", "1");
+        params.add("ids", "3");
+
+        final TestPageCollections page1 = (TestPageCollections) factory.newPage(TestPageCollections.class, params);
+
+        assertEquals(Arrays.asList(Long.valueOf(3), Long.valueOf(1), Long.valueOf(3)), page1.ids);
+        assertNull(page1.names);
+        assertNull(page1.states);
+        assertNull(page1.stateField);
+
+        params.add("names", "b");
+        params.add("names", "a");
+        params.add("names", "b");
+        params.add("states", "OFF");
+        params.add("states", "ON");
+
+        final TestPageCollections page2 = (TestPageCollections) factory.newPage(TestPageCollections.class, params);
+
+        assertEquals(Arrays.asList("b", "a"), new ArrayList<String>(page2.names));
+        assertEquals(EnumSet.of(State.ON, State.OFF), page2.states);
+        assertTrue(page2.stateField instanceof EnumSet);
+        assertEquals(page2.states, page2.stateField);
+
+        final Guicier guicier = injector.getInstance(Guicier.class);
+        final PageParameters encoded = guicier.get(TestPageCollections.class, Arrays.asList(Long.valueOf(7)),
+                page2.names, EnumSet.of(State.OFF));
+
+        assertEquals("7", encoded.get("ids").toString());
+        assertEquals(2, encoded.getValues("names").size());
+        assertEquals("OFF", encoded.get("states").toString());
+
+        // empty values do not add elements
+        params.set("states", "");
+        params.add("states", "ON");
+        params.add("sorted", "");
+        params.add("sorted", "2");
+        params.add("sorted", "1");
+
+        final TestPageCollections page3 = (TestPageCollections) factory.newPage(TestPageCollections.class, params);
+
+        assertEquals(EnumSet.of(State.ON), page3.states);
+        assertEquals(EnumSet.of(State.ON), page3.stateField);
+        assertEquals(Arrays.asList(Long.valueOf(1), Long.valueOf(2)), new ArrayList<Long>(page3.sorted));
+
+        params.set("states", "");
+        params.set("sorted", "");
+
+        final TestPageCollections page4 = (TestPageCollections) factory.newPage(TestPageCollections.class, params);
+
+        assertTrue(page4.states.isEmpty());
+        assertTrue(page4.sorted.isEmpty());
+    }
+
+    /**
+     * All rejected values are reported by one exception without a stack
+     * trace, and counted per page and parameter.
+     */
+    @Test
+    public void testInvalidParameters() {
+        final Injector injector = Guice.createInjector();
+        final GuicierPageFactory factory = injector.getInstance(GuicierPageFactory.class);
+        final Guicier guicier = injector.getInstance(Guicier.class);
+        final PageParameters params = new PageParameters();
+
+        params.add("ids", "1");
+        params.add("ids", "x");
+        params.add("names", "<script>");
+        params.add("states", "BOGUS");
+
+        for (int run = 1; run <= 2; run++) {
+            try {
+                factory.newPage(TestPageCollections.class, params);
+                fail();
+            } catch (final InvalidParametersException e) {
+                final ParameterErrors errors = e.getErrors();
+
+                assertSame(TestPageCollections.class, e.getTarget());
+                assertEquals(0, e.getStackTrace().length);
+                assertEquals(3, errors.size());
+                assertEquals("ids", errors.getName(0));
+                assertEquals("x", errors.getValue(0));
+                assertEquals("names", errors.getName(1));
+                assertEquals("states", errors.getName(2));
+                assertTrue(e.getMessage().contains(TestPageCollections.class.getName()));
+            }
+
+            assertEquals(run, guicier.getInvalidParameterCount(TestPageCollections.class, "ids"));
+            assertEquals(run, guicier.getInvalidParameterCount(TestPageCollections.class, "states"));
+        }
+
+        // nothing is left behind in the thread once the request was rejected
+        assertNull(ParameterErrors.current());
+
+        assertEquals(0, guicier.getInvalidParameterCount(TestPageCollections.class, "unknown"));
+        assertEquals(Long.valueOf(2),
+                guicier.getInvalidParameterCounts().get(TestPageCollections.class.getName() + "#names"));
+        assertNull(ParameterErrors.current());
+
+        params.set("ids", "2");
+        params.remove("names");
+        params.set("states", "ON");
+
+        assertNotNull(factory.newPage(TestPageCollections.class, params));
+    }
+
+    /**
+     * {@link ParameterConverter}s are preferred for decoding and encoding.
+     */
+    @Test
+    public void testParameterConverter() {
+        final Injector injector = Guice.createInjector();
+        final GuicierPageFactory factory = injector.getInstance(GuicierPageFactory.class);
+        final PageParameters params = new PageParameters();
+
+        params.add("color", "ff");
+        params.add("colors", "1");
+        params.add("colors", "1a");
+
+        final TestPageHex page = (TestPageHex) factory.newPage(TestPageHex.class, params);
+
+        assertEquals(255, page.color);
+        assertEquals(2, page.colors.length);
+        assertEquals(26, page.colors[1]);
+
+        params.add("colors", "xyz");
+
+        try {
+            factory.newPage(TestPageHex.class, params);
+            fail();
+        } catch (final InvalidParametersException e) {
+            assertEquals("colors", e.getErrors().getName(0));
+            assertEquals("xyz", e.getErrors().getValue(0));
+            assertEquals("invalid value", e.getErrors().getReason(0));
+        }
+
+        // the shared exception cannot be changed by whoever catches it
+        final RuntimeException invalid = AbstractParameterConverter.invalid();
+
+        invalid.addSuppressed(new IllegalStateException());
+        assertEquals(0, invalid.getSuppressed().length);
+        assertEquals(0, invalid.getStackTrace().length);
+
+        final Guicier guicier = injector.getInstance(Guicier.class);
+        final PageParameters encoded = guicier.get(TestPageHex.class, Integer.valueOf(171), new int[] { 16, 1 });
+
+        assertEquals("ab", encoded.get("color").toString());
+        assertEquals("10", encoded.getValues("colors").get(0).toString());
+        assertEquals("1", encoded.getValues("colors").get(1).toString());
+        assertEquals("ab", new HexConverter().convertToString(Integer.valueOf(171), Locale.GERMAN));
+    }
+
+    /**
+     * Parameters with too many or too long values are rejected before the
+     * values are verified or converted.
+     */
+    @Test
+    public void testParameterLimits() {
+        final Injector injector = Guice.createInjector();
+        final GuicierPageFactory factory = injector.getInstance(GuicierPageFactory.class);
+        final PageParameters params = new PageParameters();
+
+        params.add("ids", "1");
+        params.add("ids", "2");
+        params.add("name", "jfk");
+
+        final TestPageLimits page = (TestPageLimits) factory.newPage(TestPageLimits.class, params);
+
+        assertEquals(2, page.ids.length);
+        assertEquals("jfk", page.name);
+
+        params.add("ids", "<3>");
+        params.set("name", "jolira");
+
+        try {
+            factory.newPage(TestPageLimits.class, params);
+            fail();
+        } catch (final InvalidParametersException e) {
+            final ParameterErrors errors = e.getErrors();
+
+            assertEquals(2, errors.size());
+            assertEquals("ids", errors.getName(0));
+            assertNull(errors.getValue(0));
+            assertTrue(errors.getReason(0).contains("3 values"));
+            assertEquals("name", errors.getName(1));
+        }
+
+        // parameters without limits of their own are only limited if the application binds limits
+        final PageParameters many = new PageParameters();
+
+        for (int idx = 0; idx <= 1000; idx++) {
+            many.add("ids", Integer.toString(idx));
+        }
+
+        many.add("names", new String(new char[5000]).replace('\0', 'x'));
+        assertNotNull(factory.newPage(TestPageCollections.class, many));
+
+        final Injector limited = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                bindConstant().annotatedWith(Names.named(Parameter.MAX_VALUES)).to(1);
+                bindConstant().annotatedWith(Names.named(Parameter.MAX_LENGTH)).to(2);
+            }
+        });
+        final GuicierPageFactory limitedFactory = limited.getInstance(GuicierPageFactory.class);
+        final PageParameters collection = new PageParameters();
+
+        collection.add("ids", "12");
+        assertNotNull(limitedFactory.newPage(TestPageCollections.class, collection));
+
+        collection.add("ids", "3");
+
+        try {
+            limitedFactory.newPage(TestPageCollections.class, collection);
+            fail();
+        } catch (final InvalidParametersException e) {
+            assertEquals("ids", e.getErrors().getName(0));
+        }
+
+        collection.set("ids", "123");
+
+        try {
+            limitedFactory.newPage(TestPageCollections.class, collection);
+            fail();
+        } catch (final InvalidParametersException e) {
+            assertEquals("123", e.getErrors().getValue(0));
+        }
+
+        // limits declared by the parameter win over the defaults of the application
+        params.set("ids", "1");
+        params.set("name", "jfk");
+        assertNotNull(limited.getInstance(GuicierPageFactory.class).newPage(TestPageLimits.class, params));
+    }
+
+    /**
+     * {@link Provider} typed parameters are verified when the page is created
+     * and converted the first time they are used.
+     */
+    @Test
+    public void testLazyParameters() {
+        final Injector injector = Guice.createInjector();
+        final GuicierPageFactory factory = injector.getInstance(GuicierPageFactory.class);
+        final PageParameters params = new PageParameters();
+
+        params.add("offset", "x");
+
+        final TestPageLazy page1 = (TestPageLazy) factory.newPage(TestPageLazy.class, params);
+
+        try {
+            page1.offset.get();
+            fail();
+        } catch (final RuntimeException e) {
+            // the value is only converted on demand
+        }
+
+        assertNull(page1.ids.get());
+
+        params.set("offset", "42");
+        params.add("ids", "1");
+        params.add("ids", "2");
+
+        final TestPageLazy page2 = (TestPageLazy) factory.newPage(TestPageLazy.class, params);
+        final Integer offset = page2.offset.get();
+
+        assertEquals(Integer.valueOf(42), offset);
+        assertSame(offset, page2.offset.get());
+        assertEquals(Arrays.asList(Long.valueOf(1), Long.valueOf(2)), page2.ids.get());
+
+        params.set("offset", "<4");
+
+        try {
+            factory.newPage(TestPageLazy.class, params);
+            fail();
+        } catch (final IllegalArgumentException e) {
+            // the value is verified eagerly
+        }
+    }
+
+    /**
+     * Test {@link Parameter} annotated fields
+     */
+    @Test
+    public void testParameterFields() {
+        final Injector injector = Guice.createInjector();
+        final GuicierPageFactory factory = injector.getInstance(GuicierPageFactory.class);
+        final PageParameters params = new PageParameters();
+
+        params.add("id", "15");
+
+        final TestPageFields page1 = (TestPageFields) factory.newPage(TestPageFields.class, params);
+
+        assertEquals(15, page1.id);
+        assertEquals("none", page1.name);
+        assertNull(page1.state);
+
+        params.add("name", "jolira");
+        params.add("state", "ON");
+
+        final TestPageFields page2 = (TestPageFields) factory.newPage(TestPageFields.class, params);
+
+        assertEquals(15, page2.id);
+        assertEquals("jolira", page2.name);
+        assertSame(State.ON, page2.state);
+
+        params.remove("id");
+
+        final int created = TestPageFields.CREATED.get();
+
+        try {
+            factory.newPage(TestPageFields.class, params);
+            fail();
+        } catch (final PageRejectedException e) {
+            assertSame(TestPageFields.class, e.getPageClass());
+        }
+
+        // the request is rejected before the constructor runs
+        assertEquals(created, TestPageFields.CREATED.get());
+
+        params.add("id", "15");
+        params.set("state", "BOGUS");
+
+        try {
+            factory.newPage(TestPageFields.class, params);
+            fail();
+        } catch (final InvalidParametersException e) {
+            assertEquals("state", e.getErrors().getName(0));
+        }
+
+        // so is a request with an invalid field value
+        assertEquals(created, TestPageFields.CREATED.get());
+
+        // the values of the fields are not set yet, but passed as cleansed parameters
+        params.set("name", "jolira");
+        params.remove("state");
+
+        final TestPageFieldsCleansed page3 = (TestPageFieldsCleansed) factory.newPage(TestPageFieldsCleansed.class,
+                params);
+
+        assertEquals("jolira", page3.cleansedName);
+        assertEquals("jolira", page3.name);
+    }
+
+    /**
+     * Invalidating a page class only rebuilds its own maker.
+     */
+    @Test
+    public void testInvalidate() {
+        final Injector injector = Guice.createInjector();
+        final GuicierPageFactory factory = injector.getInstance(GuicierPageFactory.class);
+        final PageMaker maker6 = factory.getMaker(TestPage6.class);
+        final PageMaker maker7 = factory.getMaker(TestPage7.class);
+
+        assertTrue(factory.isBookmarkable(MyTest.class));
+        assertFalse(factory.isBookmarkable(TestPage6.class));
+        assertSame(maker6, factory.getMaker(TestPage6.class));
+        assertEquals(GuicierPageFactory.getStamp(TestPage6.class), GuicierPageFactory.getStamp(TestPage6.class));
+        assertFalse(GuicierPageFactory.getStamp(TestPage6.class) == GuicierPageFactory.getStamp(TestPage7.class));
+
+        factory.invalidate(TestPage6.class);
+
+        assertNotSame(maker6, factory.getMaker(TestPage6.class));
+        assertSame(maker7, factory.getMaker(TestPage7.class));
+
+        factory.invalidate(MyTest.class);
+
+        assertTrue(factory.isBookmarkable(MyTest.class));
+    }
+
+    private static GuicierPageFactory newStampedFactory(final Injector injector, final AtomicInteger stamp,
+            final AtomicInteger stamped) {
+        final GuicierPageFactory factory = new GuicierPageFactory(injector) {
+            @Override
+            int stamp(final Class<?> pageClass) {
+                stamped.incrementAndGet();
+                return stamp.get();
+            }
+        };
+
+        injector.injectMembers(factory);
+
+        return factory;
+    }
+
+    /**
+     * If reload checks are enabled, a page class whose stamp changed gets a
+     * new maker, but the stamp is only computed once per interval.
+     */
+    @Test
+    public void testRedefinedPage() {
+        final AtomicInteger stamp = new AtomicInteger();
+        final AtomicInteger stamped = new AtomicInteger();
+        final GuicierPageFactory factory = newStampedFactory(Guice.createInjector(Stage.DEVELOPMENT), stamp, stamped);
+        final PageMaker maker = factory.getMaker(TestPage6.class);
+
+        stamp.incrementAndGet();
+
+        // disabled by default, even in development mode
+        assertSame(maker, factory.getMaker(TestPage6.class));
+        assertEquals(0, stamped.get());
+
+        final Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                bindConstant().annotatedWith(Names.named(GuicierPageFactory.RELOAD_CHECK)).to(true);
+            }
+        });
+        final GuicierPageFactory checking = newStampedFactory(injector, stamp, stamped);
+        final PageMaker checked = checking.getMaker(TestPage6.class);
+
+        stamp.incrementAndGet();
+
+        // not checked again before the default interval has passed
+        assertSame(checked, checking.getMaker(TestPage6.class));
+        assertEquals(1, stamped.get());
+
+        final GuicierPageFactory always = newStampedFactory(injector, stamp, stamped);
+
+        always.setReloadCheckInterval(0);
+
+        final PageMaker first = always.getMaker(TestPage6.class);
+
+        assertSame(first, always.getMaker(TestPage6.class));
+        assertEquals(3, stamped.get());
+
+        stamp.incrementAndGet();
+
+        final PageMaker rebuilt = always.getMaker(TestPage6.class);
+
+        // computed once for the check, not again while rebuilding
+        assertNotSame(first, rebuilt);
+        assertEquals(4, stamped.get());
+        assertSame(rebuilt, always.getMaker(TestPage6.class));
+    }
+
+    /**
+     * Tenants share the maker but use their own providers.
+     */
+    @Test
+    public void testTenants() {
+        final Injector injector = Guice.createInjector();
+        final Injector tenantA = injector.createChildInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                bindConstant().annotatedWith(Names.named("tenant")).to("a");
+            }
+        });
+        final Injector tenantB = injector.createChildInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                bindConstant().annotatedWith(Names.named("tenant")).to("b");
+            }
+        });
+        final GuicierPageFactory factory = injector.getInstance(GuicierPageFactory.class);
+        final PageParameters params = new PageParameters();
+
+        params.add("offset", "15");
+
+        assertEquals("a", ((TestPageTenant) factory.newPage(tenantA, TestPageTenant.class, params)).tenant);
+        assertEquals("b", ((TestPageTenant) factory.newPage(tenantB, TestPageTenant.class, params)).tenant);
+        assertSame(factory.getMaker(tenantA, TestPageTenant.class), factory.getMaker(tenantA, TestPageTenant.class));
+        assertSame(factory.getMaker(TestPageTenant.class), factory.getMaker(injector, TestPageTenant.class));
+
+        try {
+            factory.newPage(TestPageTenant.class, params);
+            fail();
+        } catch (final ConfigurationException e) {
+            // not bound by the application
+        }
+
+        assertEquals(0, factory.warmUp(Arrays.asList(TestPageTenant.class.getName()), getClass().getClassLoader(), 1,
+                false));
+    }
+
+    /**
+     * Rejections have no stack trace and share their message, but every
+     * request gets its own instance.
+     */
+    @Test
+    public void testRejection() {
+        final Injector injector = Guice.createInjector();
+        final GuicierPageFactory factory = injector.getInstance(GuicierPageFactory.class);
+        final List<PageRejectedException> rejections = new ArrayList<PageRejectedException>();
+
+        for (final String key : new String[] { "offset", "junk" }) {
+            final PageParameters params = new PageParameters();
+
+            params.add(key, "2");
+
+            try {
+                factory.newPage(TestPageOverloaded.class, params);
+                fail();
+            } catch (final PageRejectedException e) {
+                rejections.add(e);
+            }
+        }
+
+        assertNotSame(rejections.get(0), rejections.get(1));
+        assertSame(rejections.get(0).getMessage(), rejections.get(1).getMessage());
+        assertSame(TestPageOverloaded.class, rejections.get(0).getPageClass());
+        assertEquals(0, rejections.get(0).getStackTrace().length);
+        assertSame(rejections.get(0), PageRejectedException.find(new WicketRuntimeException(rejections.get(0))));
+
+        rejections.get(0).addSuppressed(new IllegalStateException());
+        assertEquals(0, rejections.get(1).getSuppressed().length);
+    }
+
     /**
      *
      */
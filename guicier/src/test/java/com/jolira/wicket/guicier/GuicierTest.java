@@ -3,19 +3,31 @@
  */
 package com.jolira.wicket.guicier;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.lang.annotation.Annotation;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import javax.annotation.Nullable;
 
 import org.apache.wicket.WicketRuntimeException;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.util.convert.ConversionException;
 import org.apache.wicket.util.convert.IConverter;
+import org.apache.wicket.util.convert.converter.ByteConverter;
+import org.apache.wicket.util.convert.converter.DoubleConverter;
+import org.apache.wicket.util.convert.converter.FloatConverter;
+import org.apache.wicket.util.convert.converter.IntegerConverter;
+import org.apache.wicket.util.convert.converter.LongConverter;
+import org.apache.wicket.util.convert.converter.ShortConverter;
 import org.apache.wicket.util.string.StringValue;
 import org.junit.Test;
 
@@ -85,6 +97,16 @@ public class GuicierTest {
             return converterClass;
         }
 
+        @Override
+        public int maxLength() {
+            return -1;
+        }
+
+        @Override
+        public int maxValues() {
+            return -1;
+        }
+
         @Override
         public boolean optional() {
             return optional;
@@ -105,6 +127,10 @@ public class GuicierTest {
         ON, OFF
     }
 
+    static enum Mixed {
+        ab, AB, cd
+    }
+
     /**
      * A test object
      */
@@ -144,6 +170,34 @@ public class GuicierTest {
         }
     }
 
+    /**
+     * A test object taking primitive arrays
+     */
+    public static class TestObject4 {
+        @Inject
+        TestObject4(@Parameter("ids") final long[] ids,
+                @Parameter(value = "flags", optional = true) final boolean[] flags) {
+            // nothing
+        }
+    }
+
+    /**
+     * A converter that has no value for empty strings
+     */
+    public static class EmptyConverter implements IConverter<Integer> {
+        private static final long serialVersionUID = 6310457189624071559L;
+
+        @Override
+        public Integer convertToObject(final String value, final Locale locale) {
+            return value.isEmpty() ? null : Integer.valueOf(value);
+        }
+
+        @Override
+        public String convertToString(final Integer value, final Locale locale) {
+            return value.toString();
+        }
+    }
+
     /**
      * Test enum parameters
      */
@@ -385,6 +439,197 @@ public class GuicierTest {
         assertEquals(0, cleansed.getNamedKeys().size());
     }
 
+    /**
+     * Converters are resolved once per converter class and value type.
+     */
+    @Test
+    public void testConverterCache() {
+        final Injector injector = Guice.createInjector();
+        final Guicier guicier = injector.getInstance(Guicier.class);
+        final Parameter param = new ParameterMock("x");
+        final Parameter other = new ParameterMock("y");
+
+        assertSame(guicier.findConverter(param, State.class), guicier.findConverter(other, State.class));
+        assertSame(guicier.findConverter(param, int.class), guicier.findConverter(other, int[].class));
+        assertSame(guicier.findConverter(param, Integer.class), guicier.findConverter(param, Integer.class));
+        assertNotSame(guicier.findConverter(param, int.class), guicier.findConverter(param, Integer.class));
+    }
+
+    /**
+     * The primitive converters parse plain numbers themselves and agree with
+     * the Wicket converters.
+     */
+    @Test
+    public void testPrimitiveConverters() {
+        final String[] values = { "0", "-0", "7", "-128", "127", "-32768", "32767", "123456789", "-2147483648",
+                "999999999999999999", "1234567", "007" };
+
+        for (final String value : values) {
+            assertConverted(new Guicier.PrimitiveIntConverter(), new IntegerConverter(), value);
+            assertConverted(new Guicier.PrimitiveLongConverter(), new LongConverter(), value);
+            assertConverted(new Guicier.PrimitiveShortConverter(), new ShortConverter(), value);
+            assertConverted(new Guicier.PrimitiveByteConverter(), new ByteConverter(), value);
+            assertConverted(new Guicier.PrimitiveFloatConverter(), new FloatConverter(), value);
+            assertConverted(new Guicier.PrimitiveDoubleConverter(), new DoubleConverter(), value);
+        }
+
+        assertEquals(Integer.valueOf(0), new Guicier.PrimitiveIntConverter().convertToObject("", null));
+        assertEquals(Double.valueOf(0), new Guicier.PrimitiveDoubleConverter().convertToObject("", null));
+        assertEquals(Boolean.FALSE, new Guicier.PrimitiveBooleanConverter().convertToObject("", null));
+        assertEquals(Boolean.TRUE, new Guicier.PrimitiveBooleanConverter().convertToObject("true", null));
+        assertEquals(Character.valueOf('\0'), new Guicier.PrimitiveCharConverter().convertToObject("", null));
+        assertEquals(Character.valueOf('x'), new Guicier.PrimitiveCharConverter().convertToObject("x", null));
+    }
+
+    private static void assertConverted(final IConverter<?> fast, final IConverter<?> wicket, final String value) {
+        Object expected;
+
+        try {
+            expected = wicket.convertToObject(value, null);
+        } catch (final ConversionException e) {
+            expected = ConversionException.class;
+        }
+
+        Object actual;
+
+        try {
+            actual = fast.convertToObject(value, null);
+        } catch (final ConversionException e) {
+            actual = ConversionException.class;
+        }
+
+        assertEquals(fast.getClass().getSimpleName() + " " + value, expected, actual);
+    }
+
+    /**
+     * Enum constants are found by name, by name ignoring case if that is not
+     * ambiguous, and by ordinal.
+     */
+    @Test
+    public void testEnumConverter() {
+        final Injector injector = Guice.createInjector();
+        final Guicier guicier = injector.getInstance(Guicier.class);
+        final Parameter param = new ParameterMock("x");
+        @SuppressWarnings("unchecked")
+        final IConverter<State> state = (IConverter<State>) guicier.findConverter(param, State.class);
+        @SuppressWarnings("unchecked")
+        final IConverter<Mixed> mixed = (IConverter<Mixed>) guicier.findConverter(param, Mixed.class);
+
+        assertSame(State.ON, state.convertToObject("ON", null));
+        assertSame(State.OFF, state.convertToObject("off", null));
+        assertSame(State.OFF, state.convertToObject("1", null));
+        assertNull(state.convertToObject("", null));
+        assertSame(Mixed.ab, mixed.convertToObject("ab", null));
+        assertSame(Mixed.AB, mixed.convertToObject("AB", null));
+        assertSame(Mixed.cd, mixed.convertToObject("CD", null));
+
+        for (final String value : new String[] { "2", "12345678901", "x" }) {
+            try {
+                state.convertToObject(value, null);
+                fail(value);
+            } catch (final IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        try {
+            mixed.convertToObject("Ab", null);
+            fail();
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Values are still verified if no cleansed parameters are built.
+     */
+    @Test
+    public void testGetWithoutCleansed() {
+        final Injector injector = Guice.createInjector();
+        final Guicier guicier = injector.getInstance(Guicier.class);
+        final Parameter param = new ParameterMock("company");
+        final PageParameters parameters = new PageParameters();
+
+        assertNull(guicier.get(parameters, param, String.class, null, false));
+
+        parameters.add("company", "jolira");
+        parameters.add("company", "other");
+
+        assertEquals("jolira", guicier.get(parameters, param, String.class, null, false));
+        assertEquals(2, guicier.get(parameters, param, String[].class, null, false).length);
+
+        parameters.set("company", "<jolira>");
+
+        try {
+            guicier.get(parameters, param, String.class, null, false);
+            fail();
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+
+        // values after the first one are verified as well
+        parameters.set("company", "jolira");
+        parameters.add("company", "<script>");
+
+        try {
+            guicier.get(parameters, param, String.class, null, false);
+            fail();
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Primitive arrays are decoded and encoded.
+     */
+    @Test
+    public void testPrimitiveArrays() {
+        final Injector injector = Guice.createInjector();
+        final Guicier guicier = injector.getInstance(Guicier.class);
+        final Parameter param = new ParameterMock("ids");
+        final PageParameters parameters = new PageParameters();
+
+        parameters.add("ids", new String[] { "1", "22", "", "0042" });
+
+        assertArrayEquals(new int[] { 1, 22, 0, 42 }, guicier.get(parameters, param, int[].class, null, false));
+
+        parameters.add("ids", "3000000000");
+
+        assertArrayEquals(new long[] { 1, 22, 0, 42, 3000000000L },
+                guicier.get(parameters, param, long[].class, null, false));
+        assertArrayEquals(new double[] { 1, 22, 0, 42, 3000000000.0 },
+                guicier.get(parameters, param, double[].class, null, false), 0.0);
+
+        parameters.set("ids", "7");
+
+        assertArrayEquals(new short[] { 7 }, guicier.get(parameters, param, short[].class, null, false));
+        assertArrayEquals(new char[] { '7' }, guicier.get(parameters, param, char[].class, null, false));
+
+        // converters that return null reject the value instead of failing to unbox it
+        final Parameter empty = new ParameterMock("ids", false, EmptyConverter.class);
+
+        parameters.add("ids", "");
+
+        final ParameterErrors errors = ParameterErrors.open();
+
+        try {
+            assertArrayEquals(new int[] { 7, 0 }, guicier.get(parameters, empty, int[].class, null, false));
+            assertEquals(1, errors.size());
+            assertEquals("ids", errors.getName(0));
+            assertEquals("", errors.getValue(0));
+        } finally {
+            errors.close();
+        }
+
+        final PageParameters encoded = guicier.get(TestObject4.class, new long[] { 4, 5 }, new boolean[] { true });
+        final List<StringValue> ids = encoded.getValues("ids");
+
+        assertEquals(2, ids.size());
+        assertEquals("4", ids.get(0).toString());
+        assertEquals("5", ids.get(1).toString());
+        assertEquals("true", encoded.get("flags").toString());
+    }
+
     /**
      * Test method for Guicier#get(PageParameters, Parameter, Class).
      */
@@ -404,4 +649,28 @@ public class GuicierTest {
         assertEquals(1, cleansed.getNamedKeys().size());
         assertEquals("jolira", cleansed.getValues("company").get(0).toString());
     }
+
+    /**
+     * The verifiers agree with {@link String#matches(String)}, also for the
+     * patterns checked without a regular expression.
+     */
+    @Test
+    public void testVerifiers() {
+        final String[] patterns = { "[^<>\\n\\r\\f]*", "[a-z0-9_\\-]+", "[\\w]*", "[^-a]*", "[a-]+", "\\d+" };
+        final String[] values = { "", "jolira", "a<b", "a\nb", "x-y", "under_score", "12", "a-", "A", "\u00e9t\u00e9",
+                "\ud83d\ude00" };
+
+        for (final String pattern : patterns) {
+            final Verifier verifier = Verifier.get(pattern);
+
+            assertSame(verifier, Verifier.get(pattern));
+
+            for (final String value : values) {
+                assertEquals(pattern + " " + value, Boolean.valueOf(value.matches(pattern)),
+                        Boolean.valueOf(verifier.matches(value)));
+            }
+        }
+
+        assertTrue(Verifier.get("").matches("<>"));
+    }
 }
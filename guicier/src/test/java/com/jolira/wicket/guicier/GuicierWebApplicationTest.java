@@ -0,0 +1,378 @@
+package com.jolira.wicket.guicier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Singleton;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.markup.html.basic.Label;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.request.resource.IResource;
+import org.apache.wicket.util.lang.WicketObjects;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.jolira.wicket.guicier.GuicierPageFactoryTest.TestPageLazy;
+
+/**
+ * Test the application
+ */
+public class GuicierWebApplicationTest {
+    /**
+     * A resource that echoes a parameter
+     */
+    public static class EchoResource implements IResource {
+        private static final long serialVersionUID = 938764256860994560L;
+
+        private final int value;
+        private final transient Injector injector;
+
+        @Inject
+        EchoResource(@Parameter("value") final int value, final Injector injector) {
+            this.value = value;
+            this.injector = injector;
+        }
+
+        @Override
+        public void respond(final Attributes attributes) {
+            attributes.getResponse().write("value=" + value + ", injected=" + (injector != null));
+        }
+    }
+
+    /**
+     * A resource that serves all requests
+     */
+    @Singleton
+    public static class SingletonResource implements IResource {
+        private static final long serialVersionUID = -5585612586629675103L;
+
+        @Inject
+        SingletonResource(final Injector injector) {
+            // nothing
+        }
+
+        @Override
+        public void respond(final Attributes attributes) {
+            attributes.getResponse().write("singleton");
+        }
+    }
+
+    /**
+     * A singleton resource that depends on the request
+     */
+    @Singleton
+    public static class IllegalSingletonResource implements IResource {
+        private static final long serialVersionUID = 7931230286463739202L;
+
+        @Inject
+        IllegalSingletonResource(@Parameter("value") final int value) {
+            // nothing
+        }
+
+        @Override
+        public void respond(final Attributes attributes) {
+            // nothing
+        }
+    }
+
+    /**
+     * A label that needs member injection
+     */
+    public static class InjectedLabel extends Label {
+        private static final long serialVersionUID = 7903015752944229006L;
+
+        @Inject
+        transient Injector injector;
+
+        InjectedLabel(final String id) {
+            super(id);
+        }
+    }
+
+    /**
+     * A label created by a {@link ComponentMaker}
+     */
+    public static class MadeLabel extends Label {
+        private static final long serialVersionUID = 5605329299058548917L;
+
+        @Inject
+        transient Injector injector;
+
+        final transient Injector injectedBeforeBody;
+        final transient Injector provided;
+        final int count;
+
+        @Inject
+        MadeLabel(@Argument final String id, final Injector provided,
+                @Parameter(value = "count", optional = true) final int count) {
+            super(id);
+
+            this.injectedBeforeBody = injector;
+            this.provided = provided;
+            this.count = count;
+        }
+    }
+
+    /**
+     * A label that requires a parameter
+     */
+    public static class RequiredLabel extends Label {
+        private static final long serialVersionUID = 4160621468174410732L;
+
+        @Inject
+        RequiredLabel(@Argument final String id, @Parameter("count") final int count) {
+            super(id);
+        }
+    }
+
+    /**
+     * A label that does not need member injection
+     */
+    public static class PlainLabel extends Label {
+        private static final long serialVersionUID = -1621156373525371110L;
+
+        transient Injector injector;
+
+        PlainLabel(final String id) {
+            super(id);
+        }
+    }
+
+    /**
+     * A page that requires a parameter
+     */
+    public static class ParameterPage extends WebPage {
+        private static final long serialVersionUID = -2948114138385062177L;
+
+        @Inject
+        ParameterPage(@Parameter("id") final int id) {
+            // nothing
+        }
+    }
+
+    /**
+     * The application under test
+     */
+    public static class TestApplication extends GuicierWebApplication {
+        Injector replacement;
+
+        @Inject
+        TestApplication(final Injector injector) {
+            super(injector);
+        }
+
+        @Override
+        protected Injector getInjector() {
+            return replacement != null ? replacement : super.getInjector();
+        }
+
+        @Override
+        public Class<HomePage> getHomePage() {
+            return HomePage.class;
+        }
+
+        @Override
+        protected void init() {
+            super.init();
+
+            mountResource("echo", EchoResource.class);
+            mountResource("singleton", SingletonResource.class);
+        }
+
+        @Override
+        protected int getRejectedPageStatus() {
+            return HttpServletResponse.SC_BAD_REQUEST;
+        }
+    }
+
+    private Injector injector;
+    private WicketTester tester;
+
+    /**
+     * Start the application
+     */
+    @Before
+    public void setUp() {
+        injector = Guice.createInjector();
+        tester = new WicketTester(injector.getInstance(TestApplication.class));
+    }
+
+    /**
+     * Stop the application
+     */
+    @After
+    public void tearDown() {
+        tester.destroy();
+        tester = null;
+    }
+
+    /**
+     * Only components with injection points are injected.
+     */
+    @Test
+    public void testComponentInjection() {
+        final InjectedLabel injected = new InjectedLabel("injected");
+        final PlainLabel plain = new PlainLabel("plain");
+
+        assertSame(injector, injected.injector);
+        assertNull(plain.injector);
+        assertTrue(MembersInjection.hasInjectionPoints(InjectedLabel.class));
+        assertFalse(MembersInjection.hasInjectionPoints(PlainLabel.class));
+        assertFalse(MembersInjection.hasInjectionPoints(Label.class));
+
+        // the injector is looked up for every component, not once by init()
+        final TestApplication application = (TestApplication) tester.getApplication();
+
+        application.replacement = injector.createChildInjector();
+
+        assertSame(application.replacement, new InjectedLabel("replaced").injector);
+    }
+
+    /**
+     * Components created by a maker get their arguments from the caller, the
+     * parameters and Guice; their members are injected while the component
+     * is constructed.
+     */
+    @Test
+    public void testComponentMaker() {
+        final GuicierComponentFactory factory = injector.getInstance(GuicierComponentFactory.class);
+        final ComponentMaker<MadeLabel> maker = factory.getMaker(MadeLabel.class);
+        final MadeLabel label = maker.create("made");
+
+        assertSame(maker, factory.getMaker(MadeLabel.class));
+        assertEquals("made", label.getId());
+        assertSame(injector, label.provided);
+        assertSame(injector, label.injector);
+        assertSame(injector, label.injectedBeforeBody);
+        assertEquals(0, label.count);
+
+        final MadeLabel counted = maker.create(new PageParameters().add("count", "3"), "counted");
+
+        assertEquals("counted", counted.getId());
+        assertEquals(3, counted.count);
+        assertEquals("other", factory.newComponent(MadeLabel.class, "other").getId());
+
+        try {
+            maker.create("made", "twice");
+            fail();
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            factory.getMaker(RequiredLabel.class).create(new PageParameters(), "required");
+            fail();
+        } catch (final InvalidParametersException e) {
+            assertEquals("count", e.getErrors().getName(0));
+            assertEquals("missing", e.getErrors().getReason(0));
+        }
+    }
+
+    /**
+     * Resources are created using their constructor plan.
+     */
+    @Test
+    public void testResources() {
+        tester.executeUrl("echo?value=5");
+        assertEquals("value=5, injected=true", tester.getLastResponseAsString());
+
+        tester.setExposeExceptions(false);
+        tester.executeUrl("echo");
+        assertEquals(HttpServletResponse.SC_BAD_REQUEST, tester.getLastResponse().getStatus());
+        tester.setExposeExceptions(true);
+
+        tester.executeUrl("singleton");
+        assertEquals("singleton", tester.getLastResponseAsString());
+
+        final GuicierResourceReference<SingletonResource> singleton = new GuicierResourceReference<SingletonResource>(
+                injector, SingletonResource.class);
+        final GuicierResourceReference<EchoResource> echo = new GuicierResourceReference<EchoResource>(injector,
+                EchoResource.class);
+
+        assertSame(singleton.getResource(), singleton.getResource());
+        assertTrue(singleton.getResource() instanceof SingletonResource);
+        assertFalse(echo.getResource() instanceof EchoResource);
+
+        try {
+            new GuicierResourceReference<IllegalSingletonResource>(injector, IllegalSingletonResource.class);
+            fail();
+        } catch (final WicketRuntimeException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Requests with values that cannot be converted are answered using the
+     * invalid parameters status, and counted.
+     */
+    @Test
+    public void testInvalidParameters() {
+        tester.setExposeExceptions(false);
+        tester.executeUrl("wicket/bookmarkable/" + ParameterPage.class.getName() + "?id=one");
+
+        assertEquals(HttpServletResponse.SC_BAD_REQUEST, tester.getLastResponse().getStatus());
+        assertEquals(1, injector.getInstance(Guicier.class).getInvalidParameterCount(ParameterPage.class, "id"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T copy(final T object) {
+        return (T) WicketObjects.cloneObject(object);
+    }
+
+    /**
+     * Providers of parameters are serialized without converting their
+     * values, which are converted once they are used after deserialization.
+     */
+    @Test
+    public void testLazyParameterSerialization() {
+        final GuicierPageFactory factory = injector.getInstance(GuicierPageFactory.class);
+        final PageParameters params = new PageParameters();
+
+        params.add("offset", "x");
+        params.add("ids", "1");
+        params.add("ids", "2");
+
+        final TestPageLazy page = (TestPageLazy) factory.newPage(TestPageLazy.class, params);
+        final com.google.inject.Provider<Integer> offset = copy(page.offset);
+        final javax.inject.Provider<List<Long>> ids = copy(page.ids);
+
+        assertEquals(Arrays.asList(Long.valueOf(1), Long.valueOf(2)), ids.get());
+
+        try {
+            offset.get();
+            fail();
+        } catch (final RuntimeException e) {
+            // the malformed value fails when it is used, not when it is serialized
+        }
+
+        page.ids.get();
+        assertEquals(Arrays.asList(Long.valueOf(1), Long.valueOf(2)), copy(page.ids).get());
+    }
+
+    /**
+     * Requests that do not fit any constructor are answered using the
+     * rejected page status.
+     */
+    @Test
+    public void testRejectedPage() {
+        tester.setExposeExceptions(false);
+        tester.executeUrl("wicket/bookmarkable/" + ParameterPage.class.getName() + "?junk=1");
+
+        assertEquals(HttpServletResponse.SC_BAD_REQUEST, tester.getLastResponse().getStatus());
+    }
+}
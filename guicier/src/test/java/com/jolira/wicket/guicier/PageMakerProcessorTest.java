@@ -0,0 +1,303 @@
+package com.jolira.wicket.guicier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.request.component.IRequestablePage;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.name.Names;
+
+/**
+ * Test the generated page makers.
+ */
+public class PageMakerProcessorTest {
+    private static final String PAGE_SOURCE = "package com.jolira.wicket.guicier.generated;\n" //
+            + "import javax.inject.Inject;\n" //
+            + "import javax.inject.Named;\n" //
+            + "import org.apache.wicket.markup.html.WebPage;\n" //
+            + "import org.apache.wicket.request.mapper.parameter.PageParameters;\n" //
+            + "import com.jolira.wicket.guicier.Parameter;\n" //
+            + "public class GeneratedPage extends WebPage {\n" //
+            + "    private static final long serialVersionUID = 2978900103487328837L;\n" //
+            + "    public String selected;\n" //
+            + "    @Parameter(value = \"label\", optional = true)\n" //
+            + "    public String label = \"none\";\n" //
+            + "    @Inject\n" //
+            + "    GeneratedPage(@Named(\"greeting\") final String greeting, @Parameter(\"id\") final long id) {\n" //
+            + "        selected = greeting + \":\" + id;\n" //
+            + "    }\n" //
+            + "    @Inject\n" //
+            + "    GeneratedPage(@Parameter(\"id\") final long id, @Parameter(value = \"ids\", optional = true) "
+            + "final Integer[] ids, final PageParameters cleansed) {\n" //
+            + "        selected = id + \":\" + ids.length + \":\" + cleansed.getNamedKeys().size();\n" //
+            + "    }\n" //
+            + "    GeneratedPage() {\n" //
+            + "        selected = \"default\";\n" //
+            + "    }\n" //
+            + "    public static class Failing extends WebPage {\n" //
+            + "        private static final long serialVersionUID = 2740514230405299117L;\n" //
+            + "        @Inject\n" //
+            + "        Failing(@Parameter(\"id\") final int id) {\n" //
+            + "            throw new IllegalStateException(\"fail on purpose\");\n" //
+            + "        }\n" //
+            + "    }\n" //
+            + "    public static class Guarded extends WebPage {\n" //
+            + "        private static final long serialVersionUID = 1468079942568231930L;\n" //
+            + "        @Parameter(\"name\")\n" //
+            + "        public String name;\n" //
+            + "        @Inject\n" //
+            + "        Guarded(@Parameter(\"id\") final int id) {\n" //
+            + "            throw new IllegalStateException(\"not rejected up front\");\n" //
+            + "        }\n" //
+            + "    }\n" //
+            + "}\n";
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+
+    private static String getField(final Object page, final String name) throws Exception {
+        return (String) page.getClass().getField(name).get(page);
+    }
+
+    private WicketTester tester;
+    private File dir;
+    private ClassLoader loader;
+
+    private Class<? extends IRequestablePage> loadPage(final String name) throws ClassNotFoundException {
+        return Class.forName(name, true, loader).asSubclass(IRequestablePage.class);
+    }
+
+    /**
+     * Compile the page using the processor
+     *
+     * @throws IOException
+     *             test failed
+     */
+    @Before
+    public void setUp() throws IOException {
+        tester = new WicketTester();
+        dir = File.createTempFile("guicier", "");
+        dir.delete();
+
+        final File src = new File(dir, "com/jolira/wicket/guicier/generated/GeneratedPage.java");
+
+        src.getParentFile().mkdirs();
+
+        final Writer writer = new FileWriter(src);
+
+        try {
+            writer.write(PAGE_SOURCE);
+        } finally {
+            writer.close();
+        }
+
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final List<String> args = Arrays.asList("-nowarn", "-processor", PageMakerProcessor.class.getName(), "-cp",
+                System.getProperty("java.class.path"), "-d", dir.getPath(), src.getPath());
+        final int result = compiler.run(null, null, null, args.toArray(new String[args.size()]));
+
+        assertEquals(0, result);
+
+        loader = new URLClassLoader(new URL[] { dir.toURI().toURL() }, getClass().getClassLoader());
+    }
+
+    /**
+     * Clean up
+     */
+    @After
+    public void tearDown() {
+        tester = null;
+        delete(dir);
+    }
+
+    /**
+     * Test the generated maker
+     *
+     * @throws Exception
+     *             test failed
+     */
+    @Test
+    public void testGeneratedMaker() throws Exception {
+        assertNotNull(tester);
+
+        final Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                bindConstant().annotatedWith(Names.named("greeting")).to("hello");
+            }
+        });
+        final Class<? extends IRequestablePage> pageClass = loadPage("com.jolira.wicket.guicier.generated.GeneratedPage");
+
+        assertTrue(GeneratedPageMaker.find(injector, pageClass) instanceof GeneratedPageMaker);
+        assertNull(GeneratedPageMaker.find(injector, HomePage.class));
+
+        final GuicierPageFactory factory = injector.getInstance(GuicierPageFactory.class);
+        final PageParameters params = new PageParameters();
+
+        assertEquals("default", getField(factory.newPage(pageClass), "selected"));
+
+        params.add("id", "15");
+        assertEquals("hello:15", getField(factory.newPage(pageClass, params), "selected"));
+
+        params.add("ids", "1");
+        params.add("ids", "2");
+        params.add("junk", "<script>");
+        assertEquals("15:2:2", getField(factory.newPage(pageClass, params), "selected"));
+        assertEquals("none", getField(factory.newPage(pageClass, params), "label"));
+
+        params.add("label", "jolira");
+        assertEquals("jolira", getField(factory.newPage(pageClass, params), "label"));
+    }
+
+    private static Object getBinding(final Object maker) throws Exception {
+        final Field field = maker.getClass().getDeclaredField("arg0_1");
+
+        field.setAccessible(true);
+
+        return field.get(maker);
+    }
+
+    /**
+     * The makers of tenants share the bindings of a single generated maker and
+     * only use their own providers, even if the arguments are only bound by
+     * the tenants.
+     *
+     * @throws Exception
+     *             test failed
+     */
+    @Test
+    public void testGeneratedMakerTenants() throws Exception {
+        final Injector injector = Guice.createInjector();
+        final Class<? extends IRequestablePage> pageClass = loadPage("com.jolira.wicket.guicier.generated.GeneratedPage");
+        final GuicierPageFactory factory = injector.getInstance(GuicierPageFactory.class);
+        final Injector[] tenants = new Injector[2];
+        final String[] greetings = { "hi", "hey" };
+
+        for (int idx = 0; idx < tenants.length; idx++) {
+            final String greeting = greetings[idx];
+
+            tenants[idx] = injector.createChildInjector(new AbstractModule() {
+                @Override
+                protected void configure() {
+                    bindConstant().annotatedWith(Names.named("greeting")).to(greeting);
+                }
+            });
+        }
+
+        final PageParameters params = new PageParameters();
+
+        params.add("id", "15");
+        assertEquals("hi:15", getField(factory.newPage(tenants[0], pageClass, params), "selected"));
+        assertEquals("hey:15", getField(factory.newPage(tenants[1], pageClass, params), "selected"));
+
+        final PageMaker maker0 = factory.getMaker(tenants[0], pageClass);
+        final PageMaker maker1 = factory.getMaker(tenants[1], pageClass);
+
+        assertTrue(maker0 instanceof GeneratedPageMaker);
+        assertTrue(maker1 instanceof GeneratedPageMaker);
+        assertNotSame(maker0, maker1);
+        assertSame(getBinding(maker0), getBinding(maker1));
+        assertSame(maker0, factory.getMaker(tenants[0], pageClass));
+    }
+
+    /**
+     * Rejected values are reported before the constructor is called.
+     *
+     * @throws Exception
+     *             test failed
+     */
+    @Test(expected = InvalidParametersException.class)
+    public void testGeneratedMakerInvalidParameters() throws Exception {
+        final Injector injector = Guice.createInjector();
+        final Class<? extends IRequestablePage> pageClass = loadPage("com.jolira.wicket.guicier.generated.GeneratedPage$Failing");
+        final GuicierPageFactory factory = injector.getInstance(GuicierPageFactory.class);
+        final PageParameters params = new PageParameters();
+
+        params.add("id", "one");
+        factory.newPage(pageClass, params);
+    }
+
+    /**
+     * The processor writes the index of all pages.
+     */
+    @Test
+    public void testIndex() {
+        final Collection<String> pages = PageIndex.read(loader);
+
+        assertEquals(Arrays.asList("com.jolira.wicket.guicier.generated.GeneratedPage",
+                "com.jolira.wicket.guicier.generated.GeneratedPage$Failing",
+                "com.jolira.wicket.guicier.generated.GeneratedPage$Guarded"), new ArrayList<String>(pages));
+    }
+
+    /**
+     * Exceptions thrown by the constructor are wrapped.
+     *
+     * @throws Exception
+     *             test failed
+     */
+    @Test(expected = WicketRuntimeException.class)
+    public void testGeneratedMakerFailure() throws Exception {
+        final Injector injector = Guice.createInjector();
+        final Class<? extends IRequestablePage> pageClass = loadPage("com.jolira.wicket.guicier.generated.GeneratedPage$Failing");
+        final GuicierPageFactory factory = injector.getInstance(GuicierPageFactory.class);
+        final PageParameters params = new PageParameters();
+
+        params.add("id", "1");
+        factory.newPage(pageClass, params);
+    }
+
+    /**
+     * Requests missing a required field are rejected before the constructor
+     * is called.
+     *
+     * @throws Exception
+     *             test failed
+     */
+    @Test(expected = PageRejectedException.class)
+    public void testGeneratedMakerMissingField() throws Exception {
+        final Injector injector = Guice.createInjector();
+        final Class<? extends IRequestablePage> pageClass = loadPage("com.jolira.wicket.guicier.generated.GeneratedPage$Guarded");
+        final GuicierPageFactory factory = injector.getInstance(GuicierPageFactory.class);
+        final PageParameters params = new PageParameters();
+
+        params.add("id", "1");
+        factory.newPage(pageClass, params);
+    }
+}